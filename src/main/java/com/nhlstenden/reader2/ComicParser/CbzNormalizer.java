@@ -0,0 +1,174 @@
+package com.nhlstenden.reader2.ComicParser;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * The CbzNormalizer class repacks comics into a store-only CBZ, the fastest format to read pages from.
+ *
+ * The pages are stored uncompressed, so reading a page is a plain file read without any inflating, and are
+ * renamed to their zero padded page number in natural order ("0001.jpg", "0002.jpg", ...). A small index entry
+ * lists the pages in order together with their original names, so opening the CBZ does not have to sort anything.
+ * The pages are read through the ComicFormat of the comic, so every format that can be read can be normalized.
+ */
+public class CbzNormalizer {
+
+    // Name of the page index entry, one "page name TAB original name" line per page, in page order
+    public static final String PAGE_INDEX_ENTRY = "pages.idx";
+
+    /**
+     * Checks if a comic file benefits from normalizing: formats without random access, like RAR,
+     * and CBZ or ZIP archives with compressed pages. The format is detected from the contents of the file.
+     *
+     * @param comicFile The comic file.
+     * @return true if the comic should be normalized, false otherwise.
+     * @throws IOException If the ZIP archive can not be read.
+     */
+    public boolean needsNormalizing(File comicFile) throws IOException {
+        ComicFormat format = ComicFormats.detect(comicFile);
+        if (format == null) {
+            return false;
+        }
+        if (!format.supportsRandomAccess()) {
+            // Formats without random access are always converted, their pages are read through the format
+            return true;
+        }
+        if (!format.isZipContainer()) {
+            return false;
+        }
+
+        try (ZipFile zip = new ZipFile(comicFile)) {
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            boolean indexed = false;
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                if (entry.getName().equals(PAGE_INDEX_ENTRY)) {
+                    indexed = true;
+                } else if (ZipPageSource.isImageFile(entry.getName()) && entry.getMethod() != ZipEntry.STORED) {
+                    return true;
+                }
+            }
+            return !indexed;
+        }
+    }
+
+    /**
+     * Repacks a comic into a store-only CBZ in the target directory.
+     * The CBZ has the name of the comic with a ".cbz" extension, and is written under a temporary name first.
+     *
+     * @param comicFile The comic file to normalize.
+     * @param targetDir The directory the CBZ is written to.
+     * @return The normalized CBZ file.
+     * @throws IOException If the comic can not be read or the CBZ can not be written.
+     */
+    public File normalize(File comicFile, File targetDir) throws IOException {
+        ComicFormat format = ComicFormats.detect(comicFile);
+        if (format == null) {
+            throw new IOException("Unknown comic format: " + comicFile.getName());
+        }
+
+        String baseName = comicFile.getName().replaceFirst("\\.[^.]+$", "");
+        Path target = new File(targetDir, baseName + ".cbz").toPath();
+        Path tempTarget = target.resolveSibling(target.getFileName() + ".tmp");
+
+        try (ZipOutputStream outputStream = new ZipOutputStream(new BufferedOutputStream(Files.newOutputStream(tempTarget)));
+             PageSource pages = format.openPages(comicFile)) {
+            outputStream.setMethod(ZipOutputStream.STORED);
+            writePageIndex(repackPages(pages, outputStream), outputStream);
+        } catch (IOException e) {
+            Files.deleteIfExists(tempTarget);
+            throw e;
+        }
+
+        Files.move(tempTarget, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return target.toFile();
+    }
+
+    /**
+     * Copies the pages in page order. The format reads the pages the fastest way it can, a RAR archive
+     * for example is decompressed once in archive order, so this also works for solid archives.
+     *
+     * @return the original names of the pages, in page order.
+     */
+    private List<String> repackPages(PageSource pages, ZipOutputStream outputStream) throws IOException {
+        List<String> originalNames = new ArrayList<>(pages.size());
+        for (int i = 0; i < pages.size(); i++) {
+            try (InputStream inputStream = pages.openPage(i)) {
+                writeStored(outputStream, pageName(i, pages.getName(i)), inputStream.readAllBytes());
+            }
+            originalNames.add(pages.getName(i));
+        }
+        return originalNames;
+    }
+
+    private void writePageIndex(List<String> originalNames, ZipOutputStream outputStream) throws IOException {
+        StringBuilder index = new StringBuilder();
+        for (int i = 0; i < originalNames.size(); i++) {
+            index.append(pageName(i, originalNames.get(i))).append('\t').append(originalNames.get(i)).append('\n');
+        }
+        writeStored(outputStream, PAGE_INDEX_ENTRY, index.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Writes an uncompressed entry, a stored entry needs its size and checksum up front.
+     */
+    private void writeStored(ZipOutputStream outputStream, String name, byte[] data) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(data);
+
+        ZipEntry entry = new ZipEntry(name);
+        entry.setMethod(ZipEntry.STORED);
+        entry.setSize(data.length);
+        entry.setCompressedSize(data.length);
+        entry.setCrc(crc.getValue());
+
+        outputStream.putNextEntry(entry);
+        outputStream.write(data);
+        outputStream.closeEntry();
+    }
+
+    /**
+     * Reads the page index of a normalized CBZ.
+     *
+     * @param zip The opened CBZ.
+     * @return the page names in page order, or null if the CBZ has no page index.
+     * @throws IOException If the index can not be read.
+     */
+    public static List<String> readPageIndex(ZipFile zip) throws IOException {
+        ZipEntry indexEntry = zip.getEntry(PAGE_INDEX_ENTRY);
+        if (indexEntry == null) {
+            return null;
+        }
+        try (InputStream inputStream = zip.getInputStream(indexEntry)) {
+            List<String> pageNames = new ArrayList<>();
+            for (String line : new String(inputStream.readAllBytes(), StandardCharsets.UTF_8).split("\n")) {
+                int tab = line.indexOf('\t');
+                if (tab > 0) {
+                    pageNames.add(line.substring(0, tab));
+                }
+            }
+            return pageNames;
+        }
+    }
+
+    /**
+     * Returns the zero padded page name, keeping the extension of the original entry.
+     */
+    private static String pageName(int index, String originalName) {
+        String extension = originalName.substring(originalName.lastIndexOf('.')).toLowerCase();
+        return String.format("%04d%s", index + 1, extension);
+    }
+}
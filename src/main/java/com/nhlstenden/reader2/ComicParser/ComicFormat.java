@@ -0,0 +1,109 @@
+package com.nhlstenden.reader2.ComicParser;
+
+import com.nhlstenden.reader2.models.Chapter;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+/**
+ * A ComicFormat reads one kind of comic archive. Formats are discovered with a ServiceLoader, so a new format can be
+ * added by putting a jar on the class path that lists its ComicFormat in
+ * META-INF/services/com.nhlstenden.reader2.ComicParser.ComicFormat.
+ *
+ * The format of a file is detected from its first bytes instead of its extension, see ComicFormats.detect(File).
+ */
+public interface ComicFormat {
+
+    /**
+     * Returns the name of the format, for messages.
+     *
+     * @return the name of the format.
+     */
+    String getName();
+
+    /**
+     * Returns the file extensions this format is usually stored with, including the dot.
+     *
+     * @return the file extensions, in lower case.
+     */
+    List<String> getExtensions();
+
+    /**
+     * Checks if a file is in this format.
+     *
+     * @param header the first bytes of the file, at most ComicFormats.HEADER_BYTES and fewer for very small files.
+     * @param fileName the name of the file, for formats that share their magic bytes with another format.
+     * @return true if the file can be read by this format, false otherwise.
+     */
+    boolean matches(byte[] header, String fileName);
+
+    /**
+     * Checks if a single page can be read without reading the pages before it.
+     * Formats without random access are worth converting to one with it.
+     *
+     * @return true if pages can be read in any order, false otherwise.
+     */
+    boolean supportsRandomAccess();
+
+    /**
+     * Checks if the file is a plain ZIP archive of pages, read like a CBZ. The pages of such a file can be listed
+     * in a page table by the PageIndexer, and the file can be repacked into a store-only CBZ without changing
+     * how it is read.
+     *
+     * @return true if the file is read as a CBZ, false by default.
+     */
+    default boolean isZipContainer() {
+        return false;
+    }
+
+    /**
+     * Opens the pages of the comic file in page order, without a chapter.
+     * Used to read single pages, like the cover, and to repack the comic into a CBZ.
+     *
+     * @param compressedComic the comic file.
+     * @return the opened pages, the caller is responsible for closing them.
+     * @throws IOException If the file can not be opened.
+     */
+    PageSource openPages(File compressedComic) throws IOException;
+
+    /**
+     * Reads the encoded data of the first page, used for the cover. The pages are opened and the first one is read,
+     * formats that have to extract the whole archive to open the pages read only up to the first page instead.
+     *
+     * @param compressedComic the comic file.
+     * @return the encoded data of the first page.
+     * @throws IOException If the file can not be read or contains no pages.
+     */
+    default byte[] readFirstPage(File compressedComic) throws IOException {
+        try (PageSource pages = openPages(compressedComic)) {
+            if (pages.size() == 0) {
+                throw new IOException("No image found in " + compressedComic.getName());
+            }
+            try (InputStream inputStream = pages.openPage(0)) {
+                return inputStream.readAllBytes();
+            }
+        }
+    }
+
+    /**
+     * Returns the priority of the format. Formats with a higher priority are tried first,
+     * so a format that narrows down the magic bytes of another format can take precedence over it.
+     *
+     * @return the priority of the format, 0 by default.
+     */
+    default int getPriority() {
+        return 0;
+    }
+
+    /**
+     * Opens the comic file and sets its pages on the chapter.
+     *
+     * @param compressedComic the comic file.
+     * @param chapter the chapter to set the pages on.
+     * @return the chapter with its pages set.
+     * @throws Exception If the file can not be opened.
+     */
+    Chapter parse(File compressedComic, Chapter chapter) throws Exception;
+}
@@ -0,0 +1,100 @@
+package com.nhlstenden.reader2.ComicParser;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.ServiceLoader;
+import java.util.Set;
+
+/**
+ * Registry of the available ComicFormats, loaded once with a ServiceLoader.
+ * Detects the format of a file from its magic bytes, so misnamed archives are still read by the right format.
+ */
+public final class ComicFormats {
+
+    // Number of bytes read from the start of a file to detect its format
+    public static final int HEADER_BYTES = 16;
+
+    // The formats, highest priority first
+    private static final List<ComicFormat> FORMATS = loadFormats();
+
+    private ComicFormats() {
+    }
+
+    /**
+     * Returns all available formats, highest priority first.
+     *
+     * @return the available formats.
+     */
+    public static List<ComicFormat> getFormats() {
+        return FORMATS;
+    }
+
+    /**
+     * Detects the format of a comic file from its first bytes.
+     *
+     * @param compressedComic the comic file.
+     * @return the format of the file, or null if no format recognises it.
+     * @throws IOException If the file can not be read.
+     */
+    public static ComicFormat detect(File compressedComic) throws IOException {
+        byte[] header;
+        try (InputStream inputStream = Files.newInputStream(compressedComic.toPath())) {
+            header = inputStream.readNBytes(HEADER_BYTES);
+        }
+
+        String fileName = compressedComic.getName().toLowerCase();
+        for (ComicFormat format : FORMATS) {
+            if (format.matches(header, fileName)) {
+                return format;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the file extensions of all formats, including the dot.
+     *
+     * @return the file extensions, without duplicates.
+     */
+    public static List<String> getExtensions() {
+        Set<String> extensions = new LinkedHashSet<>();
+        for (ComicFormat format : FORMATS) {
+            extensions.addAll(format.getExtensions());
+        }
+        return new ArrayList<>(extensions);
+    }
+
+    /**
+     * Checks if the header starts with the given magic bytes.
+     *
+     * @param header the first bytes of a file.
+     * @param magic the magic bytes.
+     * @return true if the header starts with the magic bytes, false otherwise.
+     */
+    static boolean startsWith(byte[] header, int... magic) {
+        if (header.length < magic.length) {
+            return false;
+        }
+        for (int i = 0; i < magic.length; i++) {
+            if ((header[i] & 0xFF) != magic[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static List<ComicFormat> loadFormats() {
+        List<ComicFormat> formats = new ArrayList<>();
+        for (ComicFormat format : ServiceLoader.load(ComicFormat.class)) {
+            formats.add(format);
+        }
+        formats.sort(Comparator.comparingInt(ComicFormat::getPriority).reversed());
+        return List.copyOf(formats);
+    }
+}
@@ -0,0 +1,121 @@
+package com.nhlstenden.reader2.ComicParser;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+
+/**
+ * The CoverExtractor class creates the cover thumbnail of a serie from its first comic file.
+ *
+ * Only the first page of the archive is read, through the ComicFormat of the comic, and it is decoded with
+ * source subsampling straight to roughly the thumbnail size. The result is scaled to fit the cover size
+ * and written as "cover.jpg", optionally together with a double resolution "cover@2x.jpg" for HiDPI screens.
+ */
+public class CoverExtractor {
+
+    // Size of the cover shown in the series browser
+    public static final int COVER_WIDTH = 200;
+    public static final int COVER_HEIGHT = 300;
+
+    public static final String COVER_FILE = "cover.jpg";
+    public static final String COVER_FILE_HIDPI = "cover@2x.jpg";
+
+    private final boolean highDpi;
+
+    /**
+     * Creates a new CoverExtractor.
+     *
+     * @param highDpi true to also write a double resolution cover.
+     */
+    public CoverExtractor(boolean highDpi) {
+        this.highDpi = highDpi;
+    }
+
+    /**
+     * Extracts the cover of the comic file and writes it to the target directory.
+     *
+     * @param comicFile The comic file (.cbz, .zip, .cbr or .nhlcomic) to take the first page from.
+     * @param targetDir The directory the cover files are written to.
+     * @throws IOException If the comic contains no readable image or the cover can not be written.
+     */
+    public void extract(File comicFile, File targetDir) throws IOException {
+        // Read only the encoded bytes of the first page
+        byte[] firstPage = readFirstPage(comicFile);
+
+        // Decode once, at the size of the largest cover that is written
+        int scale = highDpi ? 2 : 1;
+        BufferedImage decoded = decodeSubsampled(firstPage, COVER_WIDTH * scale, COVER_HEIGHT * scale);
+
+        ImageIO.write(scaleToFit(decoded, COVER_WIDTH, COVER_HEIGHT), "jpg", new File(targetDir, COVER_FILE));
+        if (highDpi) {
+            ImageIO.write(scaleToFit(decoded, COVER_WIDTH * 2, COVER_HEIGHT * 2), "jpg", new File(targetDir, COVER_FILE_HIDPI));
+        }
+    }
+
+    /**
+     * Reads the encoded data of the first page of the comic file, through the format of the file.
+     */
+    private byte[] readFirstPage(File comicFile) throws IOException {
+        ComicFormat format = ComicFormats.detect(comicFile);
+        if (format == null) {
+            throw new IOException("Unknown comic format: " + comicFile.getName());
+        }
+        return format.readFirstPage(comicFile);
+    }
+
+    /**
+     * Decodes the first frame of the image, subsampled so it is not much larger than the requested size.
+     */
+    private BufferedImage decodeSubsampled(byte[] data, int targetWidth, int targetHeight) throws IOException {
+        try (ImageInputStream imageStream = ImageIO.createImageInputStream(new ByteArrayInputStream(data))) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(imageStream);
+            if (!readers.hasNext()) {
+                throw new IOException("No image reader found for the cover");
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(imageStream, true, true);
+
+                // Skip whole rows and columns while decoding, keeping at least the requested size
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                int subsampling = Math.max(1, Math.min(width / targetWidth, height / targetHeight));
+
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Scales the image down so it fits the given size, keeping its aspect ratio.
+     * The result has no alpha channel, so it can be written as JPEG.
+     */
+    private BufferedImage scaleToFit(BufferedImage image, int maxWidth, int maxHeight) {
+        double scale = Math.min(1.0, Math.min((double) maxWidth / image.getWidth(), (double) maxHeight / image.getHeight()));
+        int width = Math.max(1, (int) Math.round(image.getWidth() * scale));
+        int height = Math.max(1, (int) Math.round(image.getHeight() * scale));
+
+        BufferedImage scaled = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = scaled.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            graphics.drawImage(image, 0, 0, width, height, null);
+        } finally {
+            graphics.dispose();
+        }
+        return scaled;
+    }
+}
@@ -0,0 +1,117 @@
+package com.nhlstenden.reader2.ComicParser;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The DecodeExecutor class decodes pages in parallel on a fixed pool sized to the machine.
+ *
+ * Archives are read most efficiently in order by a single thread, so the encoded page data is read on the
+ * calling thread and only the decoding is handed to the pool. A semaphore caps the number of pages that are read
+ * but not decoded yet, plus the pages being decoded, so memory stays bounded however many pages are requested:
+ * the reading thread waits for a permit before reading the next page. Every page gets its own future, so the
+ * caller keeps the page order no matter in which order the decodes finish.
+ *
+ * The pool size and the cap can be configured with the "reader.decode.threads" and "reader.decode.maxConcurrent"
+ * system properties.
+ */
+public class DecodeExecutor {
+
+    // Singleton instance of DecodeExecutor
+    private static DecodeExecutor instance;
+
+    private final ExecutorService pool;
+    private final Semaphore permits;
+
+    /**
+     * Reads the encoded data of a page on the calling thread.
+     */
+    @FunctionalInterface
+    public interface PageReader {
+        byte[] read() throws Exception;
+    }
+
+    /**
+     * Decodes the encoded data of a page on a pool thread.
+     */
+    @FunctionalInterface
+    public interface PageDecoder<T> {
+        T decode(byte[] data) throws Exception;
+    }
+
+    /**
+     * Creates a new DecodeExecutor.
+     *
+     * @param threads the number of decode threads.
+     * @param maxConcurrent the maximum number of pages that are read but not decoded yet.
+     */
+    public DecodeExecutor(int threads, int maxConcurrent) {
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.pool = Executors.newFixedThreadPool(Math.max(1, threads), runnable -> {
+            Thread thread = new Thread(runnable, "page-decoder-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.permits = new Semaphore(Math.max(1, maxConcurrent));
+    }
+
+    /**
+     * Returns the shared DecodeExecutor instance, with one decode thread per core
+     * and by default twice as many pages in flight as there are threads.
+     *
+     * @return the shared DecodeExecutor instance.
+     */
+    public static synchronized DecodeExecutor getInstance() {
+        if (instance == null) {
+            int threads = Integer.getInteger("reader.decode.threads", Runtime.getRuntime().availableProcessors());
+            int maxConcurrent = Integer.getInteger("reader.decode.maxConcurrent", threads * 2);
+            instance = new DecodeExecutor(threads, maxConcurrent);
+        }
+        return instance;
+    }
+
+    /**
+     * Reads a page on the calling thread and decodes it on the pool.
+     * Blocks until fewer than maxConcurrent pages are in flight.
+     *
+     * @param reader reads the encoded page data, called on the calling thread.
+     * @param decoder decodes the page data, called on a pool thread.
+     * @return a future completing with the decoded page.
+     */
+    public <T> CompletableFuture<T> submit(PageReader reader, PageDecoder<T> decoder) {
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return CompletableFuture.failedFuture(e);
+        }
+
+        byte[] data;
+        try {
+            data = reader.read();
+        } catch (Exception e) {
+            permits.release();
+            return CompletableFuture.failedFuture(e);
+        }
+
+        CompletableFuture<T> result = new CompletableFuture<>();
+        try {
+            pool.execute(() -> {
+                try {
+                    result.complete(decoder.decode(data));
+                } catch (Throwable e) {
+                    result.completeExceptionally(e);
+                } finally {
+                    permits.release();
+                }
+            });
+        } catch (RuntimeException e) {
+            permits.release();
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+}
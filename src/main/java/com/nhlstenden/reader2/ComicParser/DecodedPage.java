@@ -0,0 +1,38 @@
+package com.nhlstenden.reader2.ComicParser;
+
+import javafx.scene.image.WritableImage;
+
+/**
+ * A page restored from the DiskPageCache.
+ *
+ * Unlike an Image decoded from the archive, a WritableImage does not know the size it was decoded to fit in,
+ * so the target size is kept with the pixels. PageList uses it to check if the page is still sharp enough
+ * for the current viewport.
+ */
+public class DecodedPage extends WritableImage {
+
+    private final int targetWidth;
+    private final int targetHeight;
+
+    /**
+     * Creates an empty page of the given size.
+     *
+     * @param width the width of the page in pixels.
+     * @param height the height of the page in pixels.
+     * @param targetWidth the width the page was decoded to fit in, or 0 for the native size.
+     * @param targetHeight the height the page was decoded to fit in, or 0 for the native size.
+     */
+    public DecodedPage(int width, int height, int targetWidth, int targetHeight) {
+        super(width, height);
+        this.targetWidth = targetWidth;
+        this.targetHeight = targetHeight;
+    }
+
+    public int getTargetWidth() {
+        return targetWidth;
+    }
+
+    public int getTargetHeight() {
+        return targetHeight;
+    }
+}
@@ -0,0 +1,265 @@
+package com.nhlstenden.reader2.ComicParser;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compact in-memory storage of the composited frames of an animation.
+ *
+ * Consecutive frames of an animated GIF usually differ in a small area only. Every keyframeInterval-th frame
+ * is stored as a complete deflated frame, every other frame as the deflated rectangle of pixels that changed
+ * since the frame before it. A frame is reconstructed from the keyframe before it plus the deltas in between,
+ * so seeking never has to apply more than keyframeInterval - 1 deltas, and playing forwards applies one delta per frame.
+ *
+ * Frames are added in order by one thread. After complete() the store is read-only and can be shared,
+ * each thread reading from it uses its own Reader.
+ */
+public class DeltaFrameStore {
+
+    private static final int BYTES_PER_PIXEL = 4;
+
+    private final int width;
+    private final int height;
+    private final int keyframeInterval;
+
+    private final List<StoredFrame> frames = new ArrayList<>();
+    private long sizeInBytes;
+
+    // The last added frame, only needed while frames are added
+    private int[] previousFrame;
+    private boolean complete = false;
+
+    /**
+     * Creates an empty frame store.
+     *
+     * @param width the width of the frames.
+     * @param height the height of the frames.
+     * @param keyframeInterval the number of frames from one keyframe to the next.
+     */
+    public DeltaFrameStore(int width, int height, int keyframeInterval) {
+        this.width = width;
+        this.height = height;
+        this.keyframeInterval = Math.max(1, keyframeInterval);
+    }
+
+    /**
+     * Adds the next frame of the animation.
+     *
+     * @param argb the composited frame, width * height pixels in ARGB format. The array is not kept.
+     * @param delayMillis how long the frame is shown.
+     */
+    public void addFrame(int[] argb, int delayMillis) {
+        if (complete) {
+            throw new IllegalStateException("The frame store is complete");
+        }
+
+        StoredFrame frame;
+        if (frames.size() % keyframeInterval == 0) {
+            frame = new StoredFrame(0, 0, width, height, deflate(argb, 0, 0, width, height), delayMillis);
+            if (previousFrame == null) {
+                previousFrame = new int[width * height];
+            }
+        } else {
+            frame = delta(argb, delayMillis);
+        }
+        System.arraycopy(argb, 0, previousFrame, 0, previousFrame.length);
+
+        frames.add(frame);
+        sizeInBytes += frame.data.length;
+    }
+
+    /**
+     * Marks the store as complete, no frames can be added afterwards.
+     */
+    public void complete() {
+        complete = true;
+        previousFrame = null;
+    }
+
+    public boolean isComplete() {
+        return complete;
+    }
+
+    public int size() {
+        return frames.size();
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getDelayMillis(int index) {
+        return frames.get(index).delayMillis;
+    }
+
+    /**
+     * Returns the number of compressed bytes held by the store.
+     *
+     * @return the size of the store in bytes.
+     */
+    public long getSizeInBytes() {
+        return sizeInBytes;
+    }
+
+    /**
+     * Creates a reader that reconstructs frames from this store.
+     *
+     * @return a new Reader.
+     */
+    public Reader newReader() {
+        return new Reader();
+    }
+
+    /**
+     * Stores the rectangle of pixels that changed since the previous frame.
+     */
+    private StoredFrame delta(int[] argb, int delayMillis) {
+        int minX = width;
+        int minY = height;
+        int maxX = -1;
+        int maxY = -1;
+
+        for (int y = 0; y < height; y++) {
+            int row = y * width;
+            for (int x = 0; x < width; x++) {
+                if (argb[row + x] != previousFrame[row + x]) {
+                    if (x < minX) minX = x;
+                    if (x > maxX) maxX = x;
+                    if (y < minY) minY = y;
+                    maxY = y;
+                }
+            }
+        }
+
+        // Nothing changed, only the delay is stored
+        if (maxX < 0) {
+            return new StoredFrame(0, 0, 0, 0, new byte[0], delayMillis);
+        }
+
+        int rectWidth = maxX - minX + 1;
+        int rectHeight = maxY - minY + 1;
+        return new StoredFrame(minX, minY, rectWidth, rectHeight, deflate(argb, minX, minY, rectWidth, rectHeight), delayMillis);
+    }
+
+    /**
+     * Deflates a rectangle of the frame.
+     */
+    private byte[] deflate(int[] argb, int x, int y, int rectWidth, int rectHeight) {
+        ByteBuffer pixels = ByteBuffer.allocate(rectWidth * rectHeight * BYTES_PER_PIXEL);
+        IntBuffer pixelInts = pixels.asIntBuffer();
+        for (int row = 0; row < rectHeight; row++) {
+            pixelInts.put(argb, (y + row) * width + x, rectWidth);
+        }
+
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(pixels.array());
+            deflater.finish();
+
+            ByteBuffer compressed = ByteBuffer.allocate(Math.max(64, pixels.capacity() / 4));
+            while (!deflater.finished()) {
+                if (!compressed.hasRemaining()) {
+                    ByteBuffer larger = ByteBuffer.allocate(compressed.capacity() * 2);
+                    compressed.flip();
+                    larger.put(compressed);
+                    compressed = larger;
+                }
+                int written = deflater.deflate(compressed.array(), compressed.position(), compressed.remaining());
+                compressed.position(compressed.position() + written);
+            }
+
+            byte[] data = new byte[compressed.position()];
+            System.arraycopy(compressed.array(), 0, data, 0, data.length);
+            return data;
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Reconstructs frames from the store. A Reader keeps track of the frame it reconstructed last,
+     * so reading the frames in order only inflates one delta per frame. Not thread-safe.
+     */
+    public class Reader {
+
+        private final Inflater inflater = new Inflater();
+        private byte[] scratch = new byte[0];
+
+        // Index of the frame the target array of the last call holds
+        private int currentIndex = -1;
+        private int[] currentTarget;
+
+        /**
+         * Reconstructs a frame into the target array.
+         *
+         * @param index the index of the frame.
+         * @param target the array receiving the frame, width * height pixels in ARGB format.
+         */
+        public void readFrame(int index, int[] target) {
+            int keyframe = index - index % keyframeInterval;
+
+            // Continue from the frame in the target when it lies between the keyframe and the requested frame
+            int start;
+            if (target == currentTarget && currentIndex >= keyframe && currentIndex <= index) {
+                start = currentIndex + 1;
+            } else {
+                start = keyframe;
+            }
+
+            for (int i = start; i <= index; i++) {
+                apply(frames.get(i), target);
+            }
+
+            currentIndex = index;
+            currentTarget = target;
+        }
+
+        /**
+         * Releases the native resources of the reader.
+         */
+        public void close() {
+            inflater.end();
+        }
+
+        private void apply(StoredFrame frame, int[] target) {
+            int length = frame.width * frame.height * BYTES_PER_PIXEL;
+            if (length == 0) {
+                return;
+            }
+            if (scratch.length < length) {
+                scratch = new byte[length];
+            }
+
+            inflater.reset();
+            inflater.setInput(frame.data);
+            try {
+                int read = 0;
+                while (read < length && !inflater.finished()) {
+                    read += inflater.inflate(scratch, read, length - read);
+                }
+            } catch (DataFormatException e) {
+                throw new IllegalStateException("Corrupt frame in the frame store", e);
+            }
+
+            IntBuffer pixels = ByteBuffer.wrap(scratch, 0, length).asIntBuffer();
+            for (int row = 0; row < frame.height; row++) {
+                pixels.get(target, (frame.y + row) * width + frame.x, frame.width);
+            }
+        }
+    }
+
+    /**
+     * A deflated frame or delta rectangle.
+     */
+    private record StoredFrame(int x, int y, int width, int height, byte[] data, int delayMillis) {
+    }
+}
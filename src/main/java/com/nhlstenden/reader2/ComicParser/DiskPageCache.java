@@ -0,0 +1,342 @@
+package com.nhlstenden.reader2.ComicParser;
+
+import com.nhlstenden.reader2.controllers.DatabaseController;
+import javafx.scene.image.Image;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.PixelReader;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
+
+/**
+ * The DiskPageCache class keeps decoded pages on disk between sessions, so reopening a recently read chapter
+ * shows its pages without inflating or decoding anything.
+ *
+ * A page is stored as raw premultiplied BGRA pixels behind a small header, one file per page. It is read back
+ * into a heap buffer with positional reads and handed to the PixelWriter in one call. The file is not memory
+ * mapped, so it can be deleted right away, also on Windows. The file name is a hash of the
+ * archive key, the entry name and the size the page was decoded to fit in. The archive key changes when the
+ * archive is replaced or modified, so pages of a changed archive are never served and their files simply age out.
+ *
+ * The cache is bounded by the size of its files, the least recently used pages are deleted when it is over budget.
+ * The budget can be configured with the "reader.diskcache.mb" system property. Pages are written on a background
+ * thread, so storing a page never slows down showing it.
+ */
+public class DiskPageCache {
+
+    private static final String CACHE_DIRECTORY = "page-cache";
+    private static final String PAGE_EXTENSION = ".page";
+
+    // "NHLP", followed by the version, the page size and the target size
+    private static final int MAGIC = 0x4E484C50;
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 6 * Integer.BYTES;
+    private static final int BYTES_PER_PIXEL = 4;
+
+    // Pages waiting to be written are dropped beyond this, so a fast reader can not pile up decoded pages in memory
+    private static final int MAX_PENDING_WRITES = 16;
+
+    // Singleton instance of DiskPageCache
+    private static DiskPageCache instance;
+
+    private final Path directory;
+    private final long maxBytes;
+
+    // Access ordered map of file name to file size, iteration starts at the least recently used page
+    private final LinkedHashMap<String, Long> files = new LinkedHashMap<>(256, 0.75f, true);
+    private final Set<String> pendingWrites = new HashSet<>();
+    private long currentBytes;
+
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "page-cache-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Creates a new DiskPageCache in the given directory and indexes the pages already stored there.
+     *
+     * @param directory the directory to store the pages in.
+     * @param maxBytes the maximum number of bytes of page files to keep.
+     */
+    public DiskPageCache(Path directory, long maxBytes) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        if (directory != null) {
+            indexDirectory();
+        }
+    }
+
+    /**
+     * Returns the shared DiskPageCache instance, stored in the local data directory.
+     * The budget is read from the "reader.diskcache.mb" system property and defaults to 1024 MB.
+     * When the data directory can not be used the returned cache stores nothing.
+     *
+     * @return the shared DiskPageCache instance.
+     */
+    public static synchronized DiskPageCache getInstance() {
+        if (instance == null) {
+            try {
+                Path directory = DatabaseController.getDataDirectory().resolve(CACHE_DIRECTORY);
+                Files.createDirectories(directory);
+                instance = new DiskPageCache(directory, Long.getLong("reader.diskcache.mb", 1024) * 1024 * 1024);
+            } catch (IOException e) {
+                e.printStackTrace();
+                instance = new DiskPageCache(null, 0);
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Creates the key of an archive from its path, size and modification time, so a changed archive gets a new key.
+     * Hashing the contents would mean reading the whole archive every time it is opened.
+     *
+     * @param archive the archive file.
+     * @return a hexadecimal key identifying the current version of the archive.
+     */
+    public static String archiveKey(File archive) {
+        return hash(archive.getAbsolutePath() + "|" + archive.length() + "|" + archive.lastModified());
+    }
+
+    /**
+     * Reads a stored page.
+     *
+     * @param archiveKey the key of the archive, see archiveKey(File).
+     * @param entryName the name of the page entry in the archive.
+     * @param targetWidth the width the page was decoded to fit in, or 0 for the native size.
+     * @param targetHeight the height the page was decoded to fit in, or 0 for the native size.
+     * @return the stored page, or null if it is not stored.
+     */
+    public DecodedPage get(String archiveKey, String entryName, int targetWidth, int targetHeight) {
+        String fileName = fileName(archiveKey, entryName, targetWidth, targetHeight);
+        synchronized (files) {
+            // get() counts as an access, so the page moves to the end of the least recently used order
+            if (files.get(fileName) == null) {
+                return null;
+            }
+        }
+
+        Path file = directory.resolve(fileName);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            // Read the file into a heap buffer instead of mapping it, a mapped file can not be deleted on Windows
+            // until the mapping is garbage collected, which would keep evict() and remove() from deleting it
+            long fileSize = channel.size();
+            if (fileSize < HEADER_BYTES || fileSize > Integer.MAX_VALUE) {
+                throw new IOException("Not a page cache file: " + file);
+            }
+            ByteBuffer buffer = ByteBuffer.allocate((int) fileSize);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, buffer.position()) < 0) {
+                    throw new IOException("Truncated page cache file: " + file);
+                }
+            }
+            buffer.flip();
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                throw new IOException("Not a page cache file: " + file);
+            }
+            int width = buffer.getInt();
+            int height = buffer.getInt();
+            int storedTargetWidth = buffer.getInt();
+            int storedTargetHeight = buffer.getInt();
+            if (width <= 0 || height <= 0 || buffer.remaining() != (long) width * height * BYTES_PER_PIXEL) {
+                throw new IOException("Truncated page cache file: " + file);
+            }
+
+            // Hand the pixels to JavaFX in one call, the image copies them into its own pixel buffer
+            DecodedPage page = new DecodedPage(width, height, storedTargetWidth, storedTargetHeight);
+            page.getPixelWriter().setPixels(0, 0, width, height, PixelFormat.getByteBgraPreInstance(), buffer, width * BYTES_PER_PIXEL);
+
+            // Keep the least recently used order when the application is started again
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+            return page;
+        } catch (IOException e) {
+            e.printStackTrace();
+            remove(fileName);
+            return null;
+        }
+    }
+
+    /**
+     * Stores a decoded page in the background, unless it is already stored.
+     *
+     * @param archiveKey the key of the archive, see archiveKey(File).
+     * @param entryName the name of the page entry in the archive.
+     * @param targetWidth the width the page was decoded to fit in, or 0 for the native size.
+     * @param targetHeight the height the page was decoded to fit in, or 0 for the native size.
+     * @param page the decoded page.
+     */
+    public void put(String archiveKey, String entryName, int targetWidth, int targetHeight, Image page) {
+        int width = (int) page.getWidth();
+        int height = (int) page.getHeight();
+        long size = HEADER_BYTES + (long) width * height * BYTES_PER_PIXEL;
+        PixelReader pixelReader = page.getPixelReader();
+        if (directory == null || pixelReader == null || width <= 0 || height <= 0 || size > Math.min(maxBytes, Integer.MAX_VALUE)) {
+            return;
+        }
+
+        String fileName = fileName(archiveKey, entryName, targetWidth, targetHeight);
+        synchronized (files) {
+            if (files.containsKey(fileName) || pendingWrites.size() >= MAX_PENDING_WRITES || !pendingWrites.add(fileName)) {
+                return;
+            }
+        }
+
+        writer.execute(() -> {
+            try {
+                write(fileName, pixelReader, width, height, targetWidth, targetHeight);
+                synchronized (files) {
+                    files.put(fileName, size);
+                    currentBytes += size;
+                    evict();
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            } finally {
+                synchronized (files) {
+                    pendingWrites.remove(fileName);
+                }
+            }
+        });
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public long getSizeInBytes() {
+        synchronized (files) {
+            return currentBytes;
+        }
+    }
+
+    /**
+     * Writes the header and pixels of a page under a temporary name and moves it in place,
+     * so a page that is read is always complete.
+     */
+    private void write(String fileName, PixelReader pixelReader, int width, int height, int targetWidth, int targetHeight) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + width * height * BYTES_PER_PIXEL);
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(width).putInt(height).putInt(targetWidth).putInt(targetHeight);
+        pixelReader.getPixels(0, 0, width, height, PixelFormat.getByteBgraPreInstance(), buffer.array(), HEADER_BYTES, width * BYTES_PER_PIXEL);
+        buffer.clear();
+
+        Path file = directory.resolve(fileName);
+        Path tempFile = file.resolveSibling(fileName + ".tmp");
+        try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(tempFile);
+            throw e;
+        }
+        Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Deletes the least recently used pages until the cache is within its budget.
+     * Must be called while holding the lock on files.
+     */
+    private void evict() {
+        Iterator<Map.Entry<String, Long>> iterator = files.entrySet().iterator();
+        while (currentBytes > maxBytes && iterator.hasNext()) {
+            Map.Entry<String, Long> eldest = iterator.next();
+            currentBytes -= eldest.getValue();
+            iterator.remove();
+            delete(directory.resolve(eldest.getKey()));
+        }
+    }
+
+    /**
+     * Forgets and deletes a page that could not be read.
+     */
+    private void remove(String fileName) {
+        synchronized (files) {
+            Long size = files.remove(fileName);
+            if (size != null) {
+                currentBytes -= size;
+            }
+        }
+        delete(directory.resolve(fileName));
+    }
+
+    /**
+     * Indexes the stored pages from least to most recently used and removes unfinished writes.
+     */
+    private void indexDirectory() {
+        try (Stream<Path> stream = Files.list(directory)) {
+            List<Path> pages = stream.filter(file -> {
+                String name = file.getFileName().toString();
+                if (name.endsWith(".tmp")) {
+                    delete(file);
+                    return false;
+                }
+                return name.endsWith(PAGE_EXTENSION);
+            }).sorted(Comparator.comparing(DiskPageCache::lastModified)).toList();
+
+            synchronized (files) {
+                for (Path page : pages) {
+                    long size = Files.size(page);
+                    files.put(page.getFileName().toString(), size);
+                    currentBytes += size;
+                }
+                evict();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static void delete(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static FileTime lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file);
+        } catch (IOException e) {
+            return FileTime.fromMillis(0);
+        }
+    }
+
+    private static String fileName(String archiveKey, String entryName, int targetWidth, int targetHeight) {
+        return hash(archiveKey + "|" + entryName + "|" + targetWidth + "x" + targetHeight) + PAGE_EXTENSION;
+    }
+
+    /**
+     * Returns the first 128 bits of the SHA-256 hash of the text in hexadecimal.
+     */
+    private static String hash(String text) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest, 0, 16);
+        } catch (NoSuchAlgorithmException e) {
+            return Integer.toHexString(text.hashCode());
+        }
+    }
+}
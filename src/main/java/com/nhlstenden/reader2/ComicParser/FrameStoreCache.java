@@ -0,0 +1,109 @@
+package com.nhlstenden.reader2.ComicParser;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The FrameStoreCache class keeps the delta encoded frames of recently played animated pages in memory,
+ * so going back to an animated page plays it without decoding the GIF again.
+ * Stores are keyed by chapter id and page index and the cache is bounded by their compressed size.
+ *
+ * The budget can be configured with the "reader.framecache.mb" system property, all methods are synchronized.
+ */
+public class FrameStoreCache {
+
+    // Singleton instance of FrameStoreCache
+    private static FrameStoreCache instance;
+
+    // Access ordered map, iteration starts at the least recently used store
+    private final LinkedHashMap<Long, DeltaFrameStore> stores = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final long maxBytes;
+    private long currentBytes;
+
+    /**
+     * Creates a new FrameStoreCache with the given memory budget.
+     *
+     * @param maxBytes the maximum number of compressed frame bytes to keep in memory.
+     */
+    public FrameStoreCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Returns the shared FrameStoreCache instance.
+     * The budget is read from the "reader.framecache.mb" system property and defaults to 64 MB.
+     *
+     * @return the shared FrameStoreCache instance.
+     */
+    public static synchronized FrameStoreCache getInstance() {
+        if (instance == null) {
+            instance = new FrameStoreCache(Long.getLong("reader.framecache.mb", 64) * 1024 * 1024);
+        }
+        return instance;
+    }
+
+    /**
+     * Returns the frame store of a page, or null if it is not cached.
+     *
+     * @param chapterId the id of the chapter.
+     * @param pageIndex the index of the page within the chapter.
+     * @return the complete frame store, or null.
+     */
+    public synchronized DeltaFrameStore get(int chapterId, int pageIndex) {
+        return stores.get(key(chapterId, pageIndex));
+    }
+
+    /**
+     * Adds the complete frame store of a page and evicts the least recently used stores when over budget.
+     *
+     * @param chapterId the id of the chapter.
+     * @param pageIndex the index of the page within the chapter.
+     * @param store the complete frame store.
+     */
+    public synchronized void put(int chapterId, int pageIndex, DeltaFrameStore store) {
+        if (!store.isComplete() || store.getSizeInBytes() > maxBytes) {
+            return;
+        }
+
+        DeltaFrameStore previous = stores.put(key(chapterId, pageIndex), store);
+        if (previous != null) {
+            currentBytes -= previous.getSizeInBytes();
+        }
+        currentBytes += store.getSizeInBytes();
+
+        Iterator<Map.Entry<Long, DeltaFrameStore>> iterator = stores.entrySet().iterator();
+        while (currentBytes > maxBytes && iterator.hasNext()) {
+            currentBytes -= iterator.next().getValue().getSizeInBytes();
+            iterator.remove();
+        }
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Removes all cached frame stores of a chapter.
+     *
+     * @param chapterId the id of the chapter.
+     */
+    public synchronized void invalidateChapter(int chapterId) {
+        Iterator<Map.Entry<Long, DeltaFrameStore>> iterator = stores.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Long, DeltaFrameStore> entry = iterator.next();
+            if ((int) (entry.getKey() >>> 32) == chapterId) {
+                currentBytes -= entry.getValue().getSizeInBytes();
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Packs the chapter id and page index into a single key.
+     */
+    private static long key(int chapterId, int pageIndex) {
+        return ((long) chapterId << 32) | (pageIndex & 0xFFFFFFFFL);
+    }
+}
@@ -0,0 +1,225 @@
+package com.nhlstenden.reader2.ComicParser;
+
+import javafx.animation.PauseTransition;
+import javafx.scene.image.Image;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+import javafx.util.Duration;
+
+import java.io.Closeable;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.Consumer;
+
+/**
+ * Plays an animated GIF page by streaming its frames from the archive entry.
+ *
+ * A background thread decodes and composites the frames into a small ring buffer of pixel arrays,
+ * and the JavaFX Application Thread copies the next frame into one WritableImage at the delay stored
+ * in the GIF. When the last frame has been shown the animation starts over.
+ *
+ * While the GIF is decoded for the first time its frames are recorded in a DeltaFrameStore. The next loops
+ * are played from that store, and the store is kept in the FrameStoreCache so the page plays without decoding
+ * the GIF again when the reader comes back to it. Animations whose store grows beyond the cache budget are
+ * streamed from the archive on every loop instead.
+ */
+public class GifAnimation implements Closeable {
+
+    // Delay before checking again when the decoder has not caught up yet
+    private static final Duration RETRY_DELAY = Duration.millis(10);
+
+    // Number of frames from one keyframe to the next in the frame store
+    private static final int KEYFRAME_INTERVAL = 16;
+
+    private final PageSource source;
+    private final int chapterId;
+    private final int index;
+    private final int width;
+    private final int height;
+
+    // Free pixel arrays, and decoded frames waiting to be shown, together they form the ring buffer
+    private final BlockingQueue<int[]> freeFrames;
+    private final BlockingQueue<Frame> readyFrames;
+
+    private final WritableImage image;
+    private final PauseTransition timer = new PauseTransition();
+
+    private Thread decoder;
+    private volatile boolean closed = false;
+
+    /**
+     * Creates a new animation for a page, nothing is read until play() is called.
+     *
+     * @param pages the pages of the chapter the page belongs to.
+     * @param index the index of the page.
+     * @param firstFrame the decoded page, used for the size of the animation.
+     * @param bufferFrames the number of decoded frames to keep ahead.
+     */
+    public GifAnimation(PageList pages, int index, Image firstFrame, int bufferFrames) {
+        this.source = pages.getSource();
+        this.chapterId = pages.getChapterId();
+        this.index = index;
+        this.width = (int) firstFrame.getWidth();
+        this.height = (int) firstFrame.getHeight();
+
+        this.freeFrames = new ArrayBlockingQueue<>(bufferFrames);
+        this.readyFrames = new ArrayBlockingQueue<>(bufferFrames);
+        for (int i = 0; i < bufferFrames; i++) {
+            freeFrames.add(new int[width * height]);
+        }
+
+        this.image = new WritableImage(width, height);
+    }
+
+    /**
+     * Starts decoding and playing the animation. Must be called on the JavaFX Application Thread.
+     *
+     * @param display called once with the image the frames are drawn on, as soon as the first frame is ready.
+     */
+    public void play(Consumer<Image> display) {
+        decoder = new Thread(this::decodeFrames, "gif-animation");
+        decoder.setDaemon(true);
+        decoder.start();
+
+        timer.setDuration(RETRY_DELAY);
+        timer.setOnFinished(event -> showNextFrame(display));
+        timer.playFromStart();
+    }
+
+    /**
+     * Shows the next decoded frame, if any, and schedules the frame after it.
+     */
+    private void showNextFrame(Consumer<Image> display) {
+        if (closed) {
+            return;
+        }
+
+        Frame frame = readyFrames.poll();
+        if (frame == null) {
+            // The decoder stopped after a single frame, so there is nothing to animate
+            if (!decoder.isAlive()) {
+                return;
+            }
+            timer.setDuration(RETRY_DELAY);
+            timer.playFromStart();
+            return;
+        }
+
+        image.getPixelWriter().setPixels(0, 0, width, height, PixelFormat.getIntArgbInstance(), frame.pixels, 0, width);
+        freeFrames.add(frame.pixels);
+
+        if (display != null) {
+            display.accept(image);
+            timer.setOnFinished(event -> showNextFrame(null));
+        }
+
+        timer.setDuration(Duration.millis(frame.delayMillis));
+        timer.playFromStart();
+    }
+
+    /**
+     * Decodes the frames into the ring buffer, starting over at the end, until the animation is closed.
+     */
+    private void decodeFrames() {
+        FrameStoreCache frameStoreCache = chapterId > 0 ? FrameStoreCache.getInstance() : null;
+        try {
+            // Play the recorded frames when the page has been played before
+            DeltaFrameStore store = frameStoreCache != null ? frameStoreCache.get(chapterId, index) : null;
+            if (store != null && store.getWidth() == width && store.getHeight() == height) {
+                playFromStore(store);
+                return;
+            }
+
+            store = new DeltaFrameStore(width, height, KEYFRAME_INTERVAL);
+            long maxStoreBytes = frameStoreCache != null ? frameStoreCache.getMaxBytes() : 0;
+
+            while (!closed) {
+                int frameCount = 0;
+                try (GifFrameReader frameReader = new GifFrameReader(source.openPage(index))) {
+                    if (frameReader.getWidth() != width || frameReader.getHeight() != height) {
+                        return;
+                    }
+                    while (!closed && frameReader.hasNext()) {
+                        int[] canvas = frameReader.nextFrame();
+
+                        // Record the first loop, unless it gets too large to be cached
+                        if (store != null) {
+                            store.addFrame(canvas, frameReader.getDelayMillis());
+                            if (store.getSizeInBytes() > maxStoreBytes) {
+                                store = null;
+                            }
+                        }
+
+                        enqueue(canvas, frameReader.getDelayMillis());
+                        frameCount++;
+                    }
+                }
+
+                // A single frame GIF is a still image, it is already shown as the page
+                if (frameCount <= 1) {
+                    readyFrames.clear();
+                    return;
+                }
+
+                // Play the following loops from the recorded frames
+                if (store != null && !closed) {
+                    store.complete();
+                    frameStoreCache.put(chapterId, index, store);
+                    playFromStore(store);
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            // The animation was closed while waiting for a free frame
+        } catch (Exception e) {
+            if (!closed) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Plays the frames of a complete frame store in a loop until the animation is closed.
+     */
+    private void playFromStore(DeltaFrameStore store) throws InterruptedException {
+        DeltaFrameStore.Reader reader = store.newReader();
+        int[] canvas = new int[width * height];
+        try {
+            while (!closed) {
+                for (int i = 0; i < store.size() && !closed; i++) {
+                    reader.readFrame(i, canvas);
+                    enqueue(canvas, store.getDelayMillis(i));
+                }
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Copies a frame into a free buffer of the ring and hands it to the JavaFX Application Thread.
+     */
+    private void enqueue(int[] canvas, int delayMillis) throws InterruptedException {
+        int[] pixels = freeFrames.take();
+        System.arraycopy(canvas, 0, pixels, 0, pixels.length);
+        readyFrames.put(new Frame(pixels, delayMillis));
+    }
+
+    /**
+     * Stops the animation and the decoder thread. Must be called on the JavaFX Application Thread.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        timer.stop();
+        if (decoder != null) {
+            decoder.interrupt();
+        }
+    }
+
+    /**
+     * A decoded frame in the ring buffer.
+     */
+    private record Frame(int[] pixels, int delayMillis) {
+    }
+}
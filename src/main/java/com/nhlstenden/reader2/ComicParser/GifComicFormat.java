@@ -0,0 +1,58 @@
+package com.nhlstenden.reader2.ComicParser;
+
+import com.nhlstenden.reader2.models.Chapter;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * ComicFormat for .nhlcomic files, ZIP archives containing (animated) GIF images read by the GifParser.
+ * They can only be told apart from other ZIP archives by their name, so this format goes before the ZipComicFormat.
+ */
+public class GifComicFormat implements ComicFormat {
+
+    @Override
+    public String getName() {
+        return "NHL comic";
+    }
+
+    @Override
+    public List<String> getExtensions() {
+        return List.of(".nhlcomic");
+    }
+
+    @Override
+    public boolean matches(byte[] header, String fileName) {
+        return ZipComicFormat.isZip(header) && fileName.endsWith(".nhlcomic");
+    }
+
+    @Override
+    public boolean supportsRandomAccess() {
+        return true;
+    }
+
+    /**
+     * A .nhlcomic file is a ZIP archive too, but it is only recognised by its name and its pages must stay GIF images
+     * to keep their animation, so it is never indexed or repacked into a CBZ.
+     */
+    @Override
+    public boolean isZipContainer() {
+        return false;
+    }
+
+    @Override
+    public int getPriority() {
+        return 10;
+    }
+
+    @Override
+    public PageSource openPages(File compressedComic) throws IOException {
+        return new GifPageSource(compressedComic);
+    }
+
+    @Override
+    public Chapter parse(File compressedComic, Chapter chapter) throws Exception {
+        return new GifParser().parse(compressedComic, chapter);
+    }
+}
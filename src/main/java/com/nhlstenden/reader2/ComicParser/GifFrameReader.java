@@ -0,0 +1,247 @@
+package com.nhlstenden.reader2.ComicParser;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataNode;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.image.BufferedImage;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * Reads the frames of an animated GIF one after another and composites them on a canvas of the logical screen size.
+ *
+ * A GIF frame only covers part of the screen and has to be drawn over the result of the frames before it,
+ * after applying the disposal method of the previous frame. The composited canvas is kept as one int[] in
+ * ARGB format, so it can be passed to a PixelWriter in one call without any per pixel allocation.
+ */
+public class GifFrameReader implements Closeable {
+
+    private static final String IMAGE_METADATA_FORMAT = "javax_imageio_gif_image_1.0";
+    private static final String STREAM_METADATA_FORMAT = "javax_imageio_gif_stream_1.0";
+
+    // Frames without a (sensible) delay are shown as long as browsers do
+    private static final int DEFAULT_DELAY_MILLIS = 100;
+
+    private final InputStream inputStream;
+    private final ImageInputStream imageStream;
+    private final ImageReader reader;
+
+    private final int width;
+    private final int height;
+
+    // The composited frame, and the canvas before the last frame for "restoreToPrevious"
+    private final int[] canvas;
+    private int[] previousCanvas;
+
+    // Pixels of the last decoded frame, reused while frames have the same size
+    private int[] framePixels = new int[0];
+
+    private int nextFrame = 0;
+    private int frameCount = -1;
+
+    // Disposal of the last frame, applied before the next frame is drawn
+    private String pendingDisposal = "none";
+    private int disposalX, disposalY, disposalWidth, disposalHeight;
+
+    private int delayMillis = DEFAULT_DELAY_MILLIS;
+
+    /**
+     * Opens a GIF image for reading its frames.
+     *
+     * @param inputStream The GIF data, is closed together with the reader.
+     * @throws IOException If the data is not a readable GIF image.
+     */
+    public GifFrameReader(InputStream inputStream) throws IOException {
+        this.inputStream = inputStream;
+        this.imageStream = ImageIO.createImageInputStream(inputStream);
+
+        // Get an ImageReader for GIF format
+        Iterator<ImageReader> readers = ImageIO.getImageReadersByFormatName("gif");
+        if (!readers.hasNext()) {
+            imageStream.close();
+            inputStream.close();
+            throw new IOException("No GIF reader found");
+        }
+        this.reader = readers.next();
+        reader.setInput(imageStream, false, false);
+
+        // The logical screen is the canvas all frames are drawn on
+        int screenWidth = 0;
+        int screenHeight = 0;
+        IIOMetadata streamMetadata = reader.getStreamMetadata();
+        if (streamMetadata != null) {
+            IIOMetadataNode screen = child((IIOMetadataNode) streamMetadata.getAsTree(STREAM_METADATA_FORMAT), "LogicalScreenDescriptor");
+            screenWidth = intAttribute(screen, "logicalScreenWidth", 0);
+            screenHeight = intAttribute(screen, "logicalScreenHeight", 0);
+        }
+        if (screenWidth <= 0 || screenHeight <= 0) {
+            screenWidth = reader.getWidth(0);
+            screenHeight = reader.getHeight(0);
+        }
+
+        this.width = screenWidth;
+        this.height = screenHeight;
+        this.canvas = new int[width * height];
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Returns the number of frames. This scans the whole GIF the first time it is called.
+     *
+     * @return the number of frames.
+     * @throws IOException If the GIF can not be read.
+     */
+    public int getFrameCount() throws IOException {
+        if (frameCount < 0) {
+            frameCount = reader.getNumImages(true);
+        }
+        return frameCount;
+    }
+
+    /**
+     * Checks if there is another frame, without scanning the rest of the GIF.
+     *
+     * @return true if nextFrame() returns another frame.
+     * @throws IOException If the GIF can not be read.
+     */
+    public boolean hasNext() throws IOException {
+        if (frameCount >= 0) {
+            return nextFrame < frameCount;
+        }
+        try {
+            reader.getWidth(nextFrame);
+            return true;
+        } catch (IndexOutOfBoundsException e) {
+            frameCount = nextFrame;
+            return false;
+        }
+    }
+
+    /**
+     * Decodes the next frame and composites it on the canvas.
+     *
+     * @return the canvas in ARGB format, width * height pixels. The array is reused by the next call.
+     * @throws IOException If the frame can not be read.
+     */
+    public int[] nextFrame() throws IOException {
+        int index = nextFrame++;
+
+        IIOMetadataNode metadata = (IIOMetadataNode) reader.getImageMetadata(index).getAsTree(IMAGE_METADATA_FORMAT);
+        IIOMetadataNode descriptor = child(metadata, "ImageDescriptor");
+        IIOMetadataNode control = child(metadata, "GraphicControlExtension");
+
+        // Undo the last frame as its disposal method asks
+        applyDisposal();
+
+        int frameX = intAttribute(descriptor, "imageLeftPosition", 0);
+        int frameY = intAttribute(descriptor, "imageTopPosition", 0);
+        String disposal = control != null ? control.getAttribute("disposalMethod") : "none";
+        int delay = intAttribute(control, "delayTime", 0) * 10;
+        delayMillis = delay > 10 ? delay : DEFAULT_DELAY_MILLIS;
+
+        if ("restoreToPrevious".equals(disposal)) {
+            if (previousCanvas == null) {
+                previousCanvas = new int[canvas.length];
+            }
+            System.arraycopy(canvas, 0, previousCanvas, 0, canvas.length);
+        }
+
+        // Copy the whole frame at once and draw its opaque pixels, GIF transparency is on or off
+        BufferedImage frame = reader.read(index);
+        int frameWidth = frame.getWidth();
+        int frameHeight = frame.getHeight();
+        if (framePixels.length < frameWidth * frameHeight) {
+            framePixels = new int[frameWidth * frameHeight];
+        }
+        frame.getRGB(0, 0, frameWidth, frameHeight, framePixels, 0, frameWidth);
+
+        int drawWidth = Math.min(frameWidth, width - frameX);
+        int drawHeight = Math.min(frameHeight, height - frameY);
+        for (int y = 0; y < drawHeight; y++) {
+            int source = y * frameWidth;
+            int target = (frameY + y) * width + frameX;
+            for (int x = 0; x < drawWidth; x++) {
+                int argb = framePixels[source + x];
+                if ((argb >>> 24) != 0) {
+                    canvas[target + x] = argb;
+                }
+            }
+        }
+
+        pendingDisposal = disposal;
+        disposalX = frameX;
+        disposalY = frameY;
+        disposalWidth = Math.max(0, drawWidth);
+        disposalHeight = Math.max(0, drawHeight);
+
+        return canvas;
+    }
+
+    /**
+     * Returns how long the last frame returned by nextFrame() should be shown.
+     *
+     * @return the delay in milliseconds.
+     */
+    public int getDelayMillis() {
+        return delayMillis;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.dispose();
+        imageStream.close();
+        inputStream.close();
+    }
+
+    private void applyDisposal() {
+        switch (pendingDisposal) {
+            case "restoreToBackgroundColor" -> {
+                // Clear the area of the last frame, the background is shown as transparent
+                for (int y = 0; y < disposalHeight; y++) {
+                    int start = (disposalY + y) * width + disposalX;
+                    Arrays.fill(canvas, start, start + disposalWidth, 0);
+                }
+            }
+            case "restoreToPrevious" -> System.arraycopy(previousCanvas, 0, canvas, 0, canvas.length);
+            default -> {
+                // "none" and "doNotDispose" leave the frame in place
+            }
+        }
+        pendingDisposal = "none";
+    }
+
+    private static IIOMetadataNode child(IIOMetadataNode parent, String name) {
+        if (parent == null) {
+            return null;
+        }
+        for (int i = 0; i < parent.getLength(); i++) {
+            if (parent.item(i).getNodeName().equals(name)) {
+                return (IIOMetadataNode) parent.item(i);
+            }
+        }
+        return null;
+    }
+
+    private static int intAttribute(IIOMetadataNode node, String name, int defaultValue) {
+        if (node == null || !node.hasAttribute(name)) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(node.getAttribute(name));
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.nhlstenden.reader2.ComicParser;
+
+import javafx.scene.image.Image;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * PageSource for .nhlcomic files, ZIP archives containing (animated) GIF images.
+ * Every GIF is one page. The page itself is the first composited frame, the animation
+ * is streamed from the archive entry by a GifAnimation while the page is shown.
+ */
+public class GifPageSource implements PageSource {
+
+    private final ZipFile zip;
+    private final List<ZipEntry> entries;
+
+    /**
+     * Opens the archive and indexes its GIF entries in page order.
+     *
+     * @param compressedComic The .nhlcomic file to be opened.
+     * @throws IOException If the archive can not be opened.
+     */
+    public GifPageSource(File compressedComic) throws IOException {
+        this.zip = new ZipFile(compressedComic);
+        this.entries = new ArrayList<>();
+
+        Enumeration<? extends ZipEntry> zipEntries = zip.entries();
+        while (zipEntries.hasMoreElements()) {
+            ZipEntry entry = zipEntries.nextElement();
+            if (!entry.isDirectory() && entry.getName().toLowerCase().endsWith(".gif")) {
+                entries.add(entry);
+            }
+        }
+
+        NaturalOrder.sort(entries, ZipEntry::getName);
+    }
+
+    @Override
+    public int size() {
+        return entries.size();
+    }
+
+    @Override
+    public String getName(int index) {
+        return entries.get(index).getName();
+    }
+
+    @Override
+    public InputStream openPage(int index) throws IOException {
+        return zip.getInputStream(entries.get(index));
+    }
+
+    /**
+     * Decodes only the first frame of the GIF, JavaFX would otherwise decode and animate all frames.
+     * GIF pages are always decoded at their native size, the animation is played at that size.
+     */
+    @Override
+    public Image decode(InputStream inputStream, int targetWidth, int targetHeight) throws IOException {
+        try (GifFrameReader frameReader = new GifFrameReader(inputStream)) {
+            int[] frame = frameReader.nextFrame();
+            return GifParser.convertToFxImage(frame, frameReader.getWidth(), frameReader.getHeight());
+        }
+    }
+
+    @Override
+    public boolean isAnimated(int index) {
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        zip.close();
+    }
+}
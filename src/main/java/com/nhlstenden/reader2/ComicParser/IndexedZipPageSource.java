@@ -0,0 +1,181 @@
+package com.nhlstenden.reader2.ComicParser;
+
+import com.nhlstenden.reader2.models.Page;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipEntry;
+
+/**
+ * PageSource for ZIP based comics with a page table, written by the PageIndexer when the chapter was imported.
+ *
+ * The page table holds the offset of the local header of every page entry, so a page is read by seeking
+ * straight to it. The central directory of the archive is never read and nothing is listed or sorted,
+ * opening the chapter at any page takes the same time however large the archive is.
+ */
+public class IndexedZipPageSource implements PageSource {
+
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int LOCAL_HEADER_SIZE = 30;
+    private static final int DATA_DESCRIPTOR_SIGNATURE = 0x08074b50;
+    private static final int DATA_DESCRIPTOR_SIZE = 16;
+    private static final int DATA_DESCRIPTOR_FLAG = 0x08;
+
+    private final FileChannel channel;
+    private final List<Page> pages;
+    private final String cacheKey;
+
+    /**
+     * Opens the archive for reading the pages in the given page table.
+     *
+     * @param compressedComic The ZIP file to be opened.
+     * @param pages The page table of the archive, in page order.
+     * @throws IOException If the archive can not be opened.
+     */
+    public IndexedZipPageSource(File compressedComic, List<Page> pages) throws IOException {
+        this.channel = FileChannel.open(compressedComic.toPath(), StandardOpenOption.READ);
+        this.pages = pages;
+        this.cacheKey = DiskPageCache.archiveKey(compressedComic);
+    }
+
+    /**
+     * Checks if the page table still matches the archive, by checking the local headers of the first and last page.
+     * The archive may have been replaced after the page table was written, so the entry name and the sizes
+     * in the local header, or in the data descriptor that follows the data, must match the page table.
+     *
+     * @return true if the page table can be used, false otherwise.
+     */
+    public boolean isValid() {
+        if (pages.isEmpty()) {
+            return false;
+        }
+        try {
+            return hasSizes(pages.getFirst(), readLocalHeader(pages.getFirst()))
+                    && hasSizes(pages.getLast(), readLocalHeader(pages.getLast()));
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public int size() {
+        return pages.size();
+    }
+
+    @Override
+    public String getName(int index) {
+        return pages.get(index).getEntryName();
+    }
+
+    @Override
+    public InputStream openPage(int index) throws IOException {
+        Page page = pages.get(index);
+        ByteBuffer header = readLocalHeader(page);
+        int method = header.getShort(8) & 0xFFFF;
+        long dataOffset = dataOffset(page, header);
+
+        // Read the compressed entry data in one positional read
+        byte[] data = new byte[Math.toIntExact(page.getCompressedSize())];
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, dataOffset + buffer.position()) < 0) {
+                throw new EOFException("Unexpected end of archive in " + page.getEntryName());
+            }
+        }
+
+        if (method == ZipEntry.STORED) {
+            return new ByteArrayInputStream(data);
+        }
+        if (method == ZipEntry.DEFLATED) {
+            // Raw deflate data, the inflater is released together with the stream
+            Inflater inflater = new Inflater(true);
+            return new InflaterInputStream(new ByteArrayInputStream(data), inflater) {
+                @Override
+                public void close() throws IOException {
+                    super.close();
+                    inflater.end();
+                }
+            };
+        }
+        throw new IOException("Unsupported compression method " + method + " for " + page.getEntryName());
+    }
+
+    @Override
+    public double getAspectRatio(int index) {
+        return pages.get(index).getAspectRatio();
+    }
+
+    @Override
+    public String getCacheKey() {
+        return cacheKey;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Returns the offset of the entry data of the page, after its local header.
+     */
+    private long dataOffset(Page page, ByteBuffer header) {
+        int nameLength = header.getShort(26) & 0xFFFF;
+        int extraLength = header.getShort(28) & 0xFFFF;
+        return page.getHeaderOffset() + LOCAL_HEADER_SIZE + nameLength + extraLength;
+    }
+
+    /**
+     * Checks if the sizes of the entry match the page table. Entries written as a stream, like those of
+     * ZipOutputStream, have their sizes in a data descriptor after the entry data instead of in the local header.
+     */
+    private boolean hasSizes(Page page, ByteBuffer header) throws IOException {
+        int flags = header.getShort(6) & 0xFFFF;
+        if ((flags & DATA_DESCRIPTOR_FLAG) == 0) {
+            return (header.getInt(18) & 0xFFFFFFFFL) == page.getCompressedSize()
+                    && (header.getInt(22) & 0xFFFFFFFFL) == page.getUncompressedSize();
+        }
+
+        // The signature of the data descriptor is optional, the sizes follow the checksum
+        ByteBuffer descriptor = read(dataOffset(page, header) + page.getCompressedSize(), DATA_DESCRIPTOR_SIZE, page);
+        int sizesOffset = descriptor.getInt(0) == DATA_DESCRIPTOR_SIGNATURE ? 8 : 4;
+        return (descriptor.getInt(sizesOffset) & 0xFFFFFFFFL) == page.getCompressedSize()
+                && (descriptor.getInt(sizesOffset + 4) & 0xFFFFFFFFL) == page.getUncompressedSize();
+    }
+
+    /**
+     * Reads the local header of the page entry, together with the entry name that follows it.
+     *
+     * @throws IOException If the local header at the offset of the page does not belong to the page entry.
+     */
+    private ByteBuffer readLocalHeader(Page page) throws IOException {
+        byte[] name = page.getEntryName().getBytes(StandardCharsets.UTF_8);
+        ByteBuffer header = read(page.getHeaderOffset(), LOCAL_HEADER_SIZE + name.length, page);
+        if (header.getInt(0) != LOCAL_HEADER_SIGNATURE || (header.getShort(26) & 0xFFFF) != name.length
+                || !Arrays.equals(header.array(), LOCAL_HEADER_SIZE, LOCAL_HEADER_SIZE + name.length, name, 0, name.length)) {
+            throw new IOException("Page table does not match the archive at " + page.getEntryName());
+        }
+        return header;
+    }
+
+    private ByteBuffer read(long offset, int length, Page page) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0) {
+                throw new EOFException("Unexpected end of archive in " + page.getEntryName());
+            }
+        }
+        return buffer;
+    }
+}
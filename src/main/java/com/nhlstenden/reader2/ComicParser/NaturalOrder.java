@@ -0,0 +1,107 @@
+package com.nhlstenden.reader2.ComicParser;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Natural ordering of archive entry names, so "page2.jpg" comes before "page10.jpg".
+ *
+ * Every name is turned into a sort key once. In the key each run of digits is written as a marker,
+ * the length of the run without leading zeros and the remaining digits, so plain String comparison
+ * of two keys compares digit runs by value. Numbers of any length are supported without overflow and
+ * comparing two keys does not allocate. Names with equal keys (e.g. "01" and "1") fall back to their
+ * plain String order, so the order is always total.
+ */
+public final class NaturalOrder {
+
+    // Written in front of every digit run, sorts the run where its first digit would sort
+    private static final char DIGIT_RUN = '0';
+
+    private NaturalOrder() {
+    }
+
+    /**
+     * Creates the sort key of a name.
+     *
+     * @param name The entry name.
+     * @return The sort key, to be compared with String.compareTo.
+     */
+    public static String key(String name) {
+        StringBuilder key = new StringBuilder(name.length() + 8);
+        int length = name.length();
+        int i = 0;
+        while (i < length) {
+            char c = name.charAt(i);
+            if (!isDigit(c)) {
+                key.append(c);
+                i++;
+                continue;
+            }
+
+            // Find the digit run and skip its leading zeros
+            int start = i;
+            while (i < length && isDigit(name.charAt(i))) {
+                i++;
+            }
+            int significant = start;
+            while (significant < i - 1 && name.charAt(significant) == '0') {
+                significant++;
+            }
+
+            key.append(DIGIT_RUN);
+            key.append((char) (i - significant));
+            key.append(name, significant, i);
+        }
+        return key.toString();
+    }
+
+    /**
+     * Compares two names in natural order. Creates both keys, when sorting use sort() instead.
+     *
+     * @param name1 The first name.
+     * @param name2 The second name.
+     * @return A negative integer, zero, or a positive integer as the first name is less than, equal to, or greater than the second.
+     */
+    public static int compare(String name1, String name2) {
+        int result = key(name1).compareTo(key(name2));
+        return result != 0 ? result : name1.compareTo(name2);
+    }
+
+    /**
+     * Sorts a list in natural order of the names of its elements.
+     * The key of every element is created once, before sorting.
+     *
+     * @param list The list to sort.
+     * @param nameOf Returns the name of an element.
+     */
+    public static <T> void sort(List<T> list, Function<? super T, String> nameOf) {
+        List<Entry<T>> entries = new ArrayList<>(list.size());
+        for (T element : list) {
+            String name = nameOf.apply(element);
+            entries.add(new Entry<>(key(name), name, element));
+        }
+
+        entries.sort(null);
+
+        for (int i = 0; i < entries.size(); i++) {
+            list.set(i, entries.get(i).element);
+        }
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    /**
+     * An element together with its precomputed sort key.
+     */
+    private record Entry<T>(String key, String name, T element) implements Comparable<Entry<T>> {
+
+        @Override
+        public int compareTo(Entry<T> other) {
+            int result = key.compareTo(other.key);
+            return result != 0 ? result : name.compareTo(other.name);
+        }
+    }
+}
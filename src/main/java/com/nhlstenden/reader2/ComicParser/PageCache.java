@@ -0,0 +1,169 @@
+package com.nhlstenden.reader2.ComicParser;
+
+import javafx.scene.image.Image;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The PageCache class keeps recently decoded pages in memory, shared by all chapters.
+ * Pages are keyed by chapter id and page index and the cache is bounded by the number of
+ * decoded pixel bytes it holds. When the budget is exceeded the least recently used pages are evicted.
+ *
+ * The budget can be configured with the "reader.pagecache.mb" system property, all methods are
+ * synchronized so decode threads and the JavaFX Application Thread can use the cache at the same time.
+ */
+public class PageCache {
+
+    // Bytes used per decoded pixel (ARGB)
+    private static final int BYTES_PER_PIXEL = 4;
+
+    // Singleton instance of PageCache
+    private static PageCache instance;
+
+    // Access ordered map, iteration starts at the least recently used page
+    private final LinkedHashMap<Long, Image> pages = new LinkedHashMap<>(64, 0.75f, true);
+
+    private long maxBytes;
+    private long currentBytes;
+
+    /**
+     * Creates a new PageCache with the given memory budget.
+     *
+     * @param maxBytes the maximum number of decoded pixel bytes to keep in memory.
+     */
+    public PageCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Returns the shared PageCache instance.
+     * The budget is read from the "reader.pagecache.mb" system property and defaults to
+     * a quarter of the maximum heap size with an upper limit of 512 MB.
+     *
+     * @return the shared PageCache instance.
+     */
+    public static synchronized PageCache getInstance() {
+        if (instance == null) {
+            long defaultMb = Math.min(512, Runtime.getRuntime().maxMemory() / 4 / (1024 * 1024));
+            long budgetMb = Long.getLong("reader.pagecache.mb", defaultMb);
+            instance = new PageCache(budgetMb * 1024 * 1024);
+        }
+        return instance;
+    }
+
+    /**
+     * Returns the cached page, or null if the page is not in the cache.
+     * A hit marks the page as most recently used.
+     *
+     * @param chapterId the id of the chapter.
+     * @param pageIndex the index of the page within the chapter.
+     * @return the cached page, or null.
+     */
+    public synchronized Image get(int chapterId, int pageIndex) {
+        return pages.get(key(chapterId, pageIndex));
+    }
+
+    /**
+     * Checks if a page is in the cache without changing its position in the LRU order.
+     *
+     * @param chapterId the id of the chapter.
+     * @param pageIndex the index of the page within the chapter.
+     * @return true if the page is cached, false otherwise.
+     */
+    public synchronized boolean contains(int chapterId, int pageIndex) {
+        return pages.containsKey(key(chapterId, pageIndex));
+    }
+
+    /**
+     * Adds a decoded page to the cache and evicts the least recently used pages when over budget.
+     * Pages larger than the whole budget are not cached.
+     *
+     * @param chapterId the id of the chapter.
+     * @param pageIndex the index of the page within the chapter.
+     * @param page the decoded page.
+     */
+    public synchronized void put(int chapterId, int pageIndex, Image page) {
+        long size = sizeOf(page);
+        if (size > maxBytes) {
+            return;
+        }
+
+        Image previous = pages.put(key(chapterId, pageIndex), page);
+        if (previous != null) {
+            currentBytes -= sizeOf(previous);
+        }
+        currentBytes += size;
+
+        evict();
+    }
+
+    /**
+     * Removes all cached pages of a chapter.
+     *
+     * @param chapterId the id of the chapter.
+     */
+    public synchronized void invalidateChapter(int chapterId) {
+        Iterator<Map.Entry<Long, Image>> iterator = pages.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Long, Image> entry = iterator.next();
+            if ((int) (entry.getKey() >>> 32) == chapterId) {
+                currentBytes -= sizeOf(entry.getValue());
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Removes all pages from the cache.
+     */
+    public synchronized void clear() {
+        pages.clear();
+        currentBytes = 0;
+    }
+
+    /**
+     * Changes the memory budget of the cache, evicting pages if the new budget is smaller.
+     *
+     * @param maxBytes the maximum number of decoded pixel bytes to keep in memory.
+     */
+    public synchronized void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+        evict();
+    }
+
+    public synchronized long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public synchronized long getSizeInBytes() {
+        return currentBytes;
+    }
+
+    /**
+     * Evicts the least recently used pages until the cache is within its budget.
+     */
+    private void evict() {
+        Iterator<Map.Entry<Long, Image>> iterator = pages.entrySet().iterator();
+        while (currentBytes > maxBytes && iterator.hasNext()) {
+            Map.Entry<Long, Image> eldest = iterator.next();
+            currentBytes -= sizeOf(eldest.getValue());
+            iterator.remove();
+        }
+    }
+
+    /**
+     * Packs the chapter id and page index into a single key.
+     */
+    private static long key(int chapterId, int pageIndex) {
+        return ((long) chapterId << 32) | (pageIndex & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Returns the number of decoded pixel bytes of an image.
+     */
+    private static long sizeOf(Image image) {
+        return (long) image.getWidth() * (long) image.getHeight() * BYTES_PER_PIXEL;
+    }
+}
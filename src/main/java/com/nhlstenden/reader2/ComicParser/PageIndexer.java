@@ -0,0 +1,217 @@
+package com.nhlstenden.reader2.ComicParser;
+
+import com.nhlstenden.reader2.DataLibrary.PageLibrary;
+import com.nhlstenden.reader2.models.Page;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * The PageIndexer class builds the page table of a ZIP based chapter, stored in the Page table by PageLibrary.
+ *
+ * The pages are listed in the same order the ZipPageSource uses. The sizes and local header offsets are read from
+ * the central directory of the archive, which java.util.zip does not expose, and the pixel dimensions are read
+ * from the image headers without decoding the pages. ZIP64 archives are not indexed, they are read by the
+ * ZipPageSource as before.
+ */
+public class PageIndexer {
+
+    private static final int END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054b50;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int END_OF_CENTRAL_DIRECTORY_SIZE = 22;
+    private static final int CENTRAL_HEADER_SIZE = 46;
+    private static final long ZIP64_MARKER = 0xFFFFFFFFL;
+
+    // Indexes chapters one at a time in the background, shared by the import and the reader
+    private static final ExecutorService indexExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "page-indexer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Checks if the page table of a file can be built, only comics read as a CBZ are indexed.
+     *
+     * @param compressedComic the comic file.
+     * @return true if the file can be indexed, false otherwise.
+     */
+    public static boolean canIndex(File compressedComic) {
+        try {
+            ComicFormat format = ComicFormats.detect(compressedComic);
+            return format != null && format.isZipContainer();
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Builds and stores the page table of a chapter in the background.
+     * Files that can not be indexed are skipped.
+     *
+     * @param chapterId the ID of the chapter.
+     * @param compressedComic the comic file of the chapter.
+     */
+    public static void indexInBackground(int chapterId, File compressedComic) {
+        if (chapterId <= 0 || compressedComic == null) {
+            return;
+        }
+        indexExecutor.execute(() -> {
+            if (!canIndex(compressedComic)) {
+                return;
+            }
+            try {
+                List<Page> pages = new PageIndexer().index(chapterId, compressedComic);
+                if (!pages.isEmpty()) {
+                    new PageLibrary().replacePages(chapterId, pages);
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        });
+    }
+
+    /**
+     * Builds the page table of a ZIP based comic.
+     *
+     * @param chapterId the ID of the chapter the pages belong to.
+     * @param compressedComic the ZIP file to be indexed.
+     * @return the pages in page order, or an empty list if the archive can not be indexed.
+     * @throws IOException If the archive can not be read.
+     */
+    public List<Page> index(int chapterId, File compressedComic) throws IOException {
+        Map<String, CentralEntry> centralDirectory = readCentralDirectory(compressedComic);
+        if (centralDirectory == null) {
+            return List.of();
+        }
+
+        List<Page> pages = new ArrayList<>();
+        try (ZipPageSource source = new ZipPageSource(compressedComic)) {
+            for (int i = 0; i < source.size(); i++) {
+                CentralEntry entry = centralDirectory.get(source.getName(i));
+                if (entry == null) {
+                    return List.of();
+                }
+
+                int[] dimensions = readDimensions(source, i);
+                pages.add(new Page(chapterId, entry.name(), i, entry.compressedSize(), entry.uncompressedSize(),
+                        entry.headerOffset(), dimensions[0], dimensions[1]));
+            }
+        }
+        return pages;
+    }
+
+    /**
+     * Reads the size of a page from its image header, only the first bytes of the entry are read.
+     *
+     * @return the width and height, or zeros if the image header can not be read.
+     */
+    private static int[] readDimensions(PageSource source, int index) {
+        try (InputStream inputStream = source.openPage(index);
+             ImageInputStream imageStream = ImageIO.createImageInputStream(inputStream)) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(imageStream);
+            if (readers.hasNext()) {
+                ImageReader reader = readers.next();
+                try {
+                    reader.setInput(imageStream, true, true);
+                    return new int[]{reader.getWidth(0), reader.getHeight(0)};
+                } finally {
+                    reader.dispose();
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return new int[]{0, 0};
+    }
+
+    /**
+     * Reads the central directory of the archive.
+     *
+     * @return the entries by name, or null if the archive uses ZIP64 or has no readable central directory.
+     */
+    static Map<String, CentralEntry> readCentralDirectory(File compressedComic) throws IOException {
+        try (FileChannel channel = FileChannel.open(compressedComic.toPath(), StandardOpenOption.READ)) {
+            // The end of central directory record is at the end, followed by a comment of at most 64 KB
+            long fileSize = channel.size();
+            int tailSize = (int) Math.min(fileSize, END_OF_CENTRAL_DIRECTORY_SIZE + 0xFFFF);
+            ByteBuffer tail = read(channel, fileSize - tailSize, tailSize);
+
+            // The comment may contain the signature too, the real record is followed by exactly its comment
+            int end = -1;
+            for (int i = tailSize - END_OF_CENTRAL_DIRECTORY_SIZE; i >= 0; i--) {
+                if (tail.getInt(i) == END_OF_CENTRAL_DIRECTORY_SIGNATURE
+                        && (tail.getShort(i + 20) & 0xFFFF) == tailSize - i - END_OF_CENTRAL_DIRECTORY_SIZE) {
+                    end = i;
+                    break;
+                }
+            }
+            if (end < 0) {
+                return null;
+            }
+
+            int entryCount = tail.getShort(end + 10) & 0xFFFF;
+            long directorySize = tail.getInt(end + 12) & ZIP64_MARKER;
+            long directoryOffset = tail.getInt(end + 16) & ZIP64_MARKER;
+            if (entryCount == 0xFFFF || directorySize == ZIP64_MARKER || directoryOffset == ZIP64_MARKER
+                    || directoryOffset + directorySize > fileSize) {
+                return null;
+            }
+
+            ByteBuffer directory = read(channel, directoryOffset, (int) directorySize);
+            Map<String, CentralEntry> entries = new HashMap<>();
+            int position = 0;
+            for (int i = 0; i < entryCount; i++) {
+                if (position + CENTRAL_HEADER_SIZE > directorySize || directory.getInt(position) != CENTRAL_HEADER_SIGNATURE) {
+                    return null;
+                }
+                long compressedSize = directory.getInt(position + 20) & ZIP64_MARKER;
+                long uncompressedSize = directory.getInt(position + 24) & ZIP64_MARKER;
+                int nameLength = directory.getShort(position + 28) & 0xFFFF;
+                int extraLength = directory.getShort(position + 30) & 0xFFFF;
+                int commentLength = directory.getShort(position + 32) & 0xFFFF;
+                long headerOffset = directory.getInt(position + 42) & ZIP64_MARKER;
+                if (compressedSize == ZIP64_MARKER || uncompressedSize == ZIP64_MARKER || headerOffset == ZIP64_MARKER) {
+                    return null;
+                }
+
+                // Names are read as UTF-8, like ZipFile does by default
+                String name = new String(directory.array(), position + CENTRAL_HEADER_SIZE, nameLength, StandardCharsets.UTF_8);
+                entries.put(name, new CentralEntry(name, compressedSize, uncompressedSize, headerOffset));
+                position += CENTRAL_HEADER_SIZE + nameLength + extraLength + commentLength;
+            }
+            return entries;
+        }
+    }
+
+    private static ByteBuffer read(FileChannel channel, long offset, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of archive");
+            }
+        }
+        return buffer;
+    }
+
+    /**
+     * An entry of the central directory.
+     */
+    record CentralEntry(String name, long compressedSize, long uncompressedSize, long headerOffset) {
+    }
+}
@@ -0,0 +1,240 @@
+package com.nhlstenden.reader2.ComicParser;
+
+import javafx.scene.image.Image;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.AbstractList;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A read-only list of pages that decodes each page only when it is requested.
+ * The list is backed by a PageSource, so only the archive index is held in memory.
+ * Decoded pages of library chapters are kept in the shared PageCache, so asking for
+ * the same page again does not decode it a second time.
+ *
+ * Pages of library chapters are also stored in the DiskPageCache, so a chapter that was read before is
+ * shown after a restart without decoding its pages again.
+ *
+ * Pages are decoded to fit the target size, usually the size of the reader viewport in device pixels.
+ * A cached page that was decoded for a smaller target size is decoded again, at the current target size,
+ * the next time it is requested.
+ */
+public class PageList extends AbstractList<Image> implements Closeable {
+
+    private final int chapterId;
+    private final PageSource source;
+    private final PageCache pageCache;
+    private final DiskPageCache diskPageCache;
+
+    // Size to fit decoded pages in, 0 decodes pages at their native size
+    private volatile int targetWidth = 0;
+    private volatile int targetHeight = 0;
+
+    /**
+     * Creates a new lazy page list on top of the given page source.
+     * Pages of chapters that are not stored in the library (id 0) are not cached.
+     *
+     * @param chapterId the id of the chapter the pages belong to.
+     * @param source the PageSource providing the encoded pages.
+     */
+    public PageList(int chapterId, PageSource source) {
+        this.chapterId = chapterId;
+        this.source = source;
+        this.pageCache = chapterId > 0 ? PageCache.getInstance() : null;
+        this.diskPageCache = chapterId > 0 && source.getCacheKey() != null ? DiskPageCache.getInstance() : null;
+    }
+
+    /**
+     * Returns the page at the given index, from the cache when possible.
+     *
+     * @param index the index of the page.
+     * @return the decoded page.
+     * @throws IllegalStateException If the page can not be read from the archive.
+     */
+    @Override
+    public Image get(int index) {
+        if (pageCache == null) {
+            return decode(index, targetWidth, targetHeight);
+        }
+
+        Image page = pageCache.get(chapterId, index);
+        if (page == null || !fitsTarget(page)) {
+            int width = targetWidth;
+            int height = targetHeight;
+            page = loadStored(index, width, height);
+            if (page == null) {
+                page = decode(index, width, height);
+                store(index, width, height, page);
+            }
+            pageCache.put(chapterId, index, page);
+        }
+        return page;
+    }
+
+    /**
+     * Decodes the page at the given index on the DecodeExecutor.
+     *
+     * The encoded page is read on the calling thread, so calling this for several pages in a row reads the
+     * archive in order while the pages are decoded in parallel. Blocks while the DecodeExecutor is at its cap.
+     * Pages found in the DiskPageCache are read on the calling thread instead.
+     * The decoded page is stored in the PageCache and the DiskPageCache.
+     *
+     * @param index the index of the page.
+     * @return a future completing with the decoded page.
+     */
+    public CompletableFuture<Image> decodeAsync(int index) {
+        int width = targetWidth;
+        int height = targetHeight;
+        if (pageCache != null) {
+            Image cached = pageCache.get(chapterId, index);
+            if (cached != null && fitsTarget(cached)) {
+                return CompletableFuture.completedFuture(cached);
+            }
+
+            Image stored = loadStored(index, width, height);
+            if (stored != null) {
+                pageCache.put(chapterId, index, stored);
+                return CompletableFuture.completedFuture(stored);
+            }
+        }
+
+        return DecodeExecutor.getInstance().submit(() -> {
+            try (InputStream inputStream = source.openPage(index)) {
+                return inputStream.readAllBytes();
+            }
+        }, data -> {
+            Image page = source.decode(new ByteArrayInputStream(data), width, height);
+            if (pageCache != null) {
+                store(index, width, height, page);
+                pageCache.put(chapterId, index, page);
+            }
+            return page;
+        });
+    }
+
+    /**
+     * Checks if the page at the given index can be returned without decoding it.
+     *
+     * @param index the index of the page.
+     * @return true if the page is cached, false otherwise.
+     */
+    public boolean isCached(int index) {
+        if (pageCache == null || !pageCache.contains(chapterId, index)) {
+            return false;
+        }
+        Image page = pageCache.get(chapterId, index);
+        return page != null && fitsTarget(page);
+    }
+
+    /**
+     * Sets the size pages are decoded to fit in, keeping their aspect ratio.
+     *
+     * @param width the target width in pixels, or 0 for the native size.
+     * @param height the target height in pixels, or 0 for the native size.
+     */
+    public void setTargetSize(int width, int height) {
+        this.targetWidth = Math.max(0, width);
+        this.targetHeight = Math.max(0, height);
+    }
+
+    /**
+     * Checks if a decoded page is large enough for the current target size.
+     * Pages decoded at their native size always are, they can not get any sharper.
+     */
+    private boolean fitsTarget(Image page) {
+        double requestedWidth = page.getRequestedWidth();
+        double requestedHeight = page.getRequestedHeight();
+        if (page instanceof DecodedPage decodedPage) {
+            requestedWidth = decodedPage.getTargetWidth();
+            requestedHeight = decodedPage.getTargetHeight();
+        }
+        if (requestedWidth <= 0 && requestedHeight <= 0) {
+            return true;
+        }
+        if (targetWidth <= 0 || targetHeight <= 0) {
+            return false;
+        }
+        return requestedWidth >= targetWidth && requestedHeight >= targetHeight;
+    }
+
+    /**
+     * Reads the page at the given index from the DiskPageCache, if it was stored for this target size.
+     */
+    private Image loadStored(int index, int width, int height) {
+        if (diskPageCache == null) {
+            return null;
+        }
+        return diskPageCache.get(source.getCacheKey(), source.getName(index), width, height);
+    }
+
+    /**
+     * Stores a decoded page in the DiskPageCache, in the background.
+     */
+    private void store(int index, int width, int height, Image page) {
+        if (diskPageCache != null) {
+            diskPageCache.put(source.getCacheKey(), source.getName(index), width, height, page);
+        }
+    }
+
+    /**
+     * Decodes the page at the given index from the page source.
+     */
+    private Image decode(int index, int width, int height) {
+        try {
+            return source.decode(index, width, height);
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to read page " + source.getName(index), e);
+        }
+    }
+
+    /**
+     * Checks if the page at the given index is animated.
+     *
+     * @param index the index of the page.
+     * @return true if the page can be played as animation, false otherwise.
+     */
+    public boolean isAnimated(int index) {
+        return source.isAnimated(index);
+    }
+
+    /**
+     * Returns the aspect ratio (width / height) of the page at the given index, without decoding it.
+     *
+     * @param index the index of the page.
+     * @return the aspect ratio, or 0 if it is not known before decoding.
+     */
+    public double getAspectRatio(int index) {
+        return source.getAspectRatio(index);
+    }
+
+    @Override
+    public int size() {
+        return source.size();
+    }
+
+    public int getChapterId() {
+        return chapterId;
+    }
+
+    /**
+     * Returns the PageSource backing this list.
+     *
+     * @return the PageSource.
+     */
+    public PageSource getSource() {
+        return source;
+    }
+
+    /**
+     * Closes the underlying page source and releases the archive handle.
+     *
+     * @throws IOException If closing the archive fails.
+     */
+    @Override
+    public void close() throws IOException {
+        source.close();
+    }
+}
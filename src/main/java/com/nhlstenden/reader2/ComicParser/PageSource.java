@@ -0,0 +1,137 @@
+package com.nhlstenden.reader2.ComicParser;
+
+import javafx.scene.image.Image;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+
+/**
+ * A PageSource gives indexed access to the page entries of an opened comic archive.
+ * The entries are listed and ordered once when the source is opened, the actual page
+ * data is only read when a page is requested.
+ */
+public interface PageSource extends Closeable {
+
+    /**
+     * Returns the number of pages in the archive.
+     *
+     * @return the number of pages.
+     */
+    int size();
+
+    /**
+     * Returns the name of the archive entry backing the given page.
+     *
+     * @param index the index of the page.
+     * @return the entry name of the page.
+     */
+    String getName(int index);
+
+    /**
+     * Opens a stream to the raw (encoded) data of the given page.
+     * The caller is responsible for closing the returned stream.
+     *
+     * @param index the index of the page.
+     * @return an InputStream with the encoded image data.
+     * @throws IOException If the entry can not be read from the archive.
+     */
+    InputStream openPage(int index) throws IOException;
+
+    /**
+     * Decodes the (first frame of the) given page.
+     *
+     * @param index the index of the page.
+     * @param targetWidth the width to fit the page in, or 0 for the native size.
+     * @param targetHeight the height to fit the page in, or 0 for the native size.
+     * @return the decoded page.
+     * @throws IOException If the entry can not be read from the archive.
+     */
+    default Image decode(int index, int targetWidth, int targetHeight) throws IOException {
+        try (InputStream inputStream = openPage(index)) {
+            return decode(inputStream, targetWidth, targetHeight);
+        }
+    }
+
+    /**
+     * Decodes the (first frame of the) page data read from this source.
+     * Used to decode pages whose data has already been read, possibly on another thread.
+     *
+     * When a target size is given a page larger than it is scaled down while decoding to fit in it, keeping its
+     * aspect ratio, so only the pixels that can be shown are kept in memory. Smaller pages are decoded at their
+     * native size, scaling them up would only take more memory without making them any sharper.
+     *
+     * @param inputStream the encoded page data.
+     * @param targetWidth the width to fit the page in, or 0 for the native size.
+     * @param targetHeight the height to fit the page in, or 0 for the native size.
+     * @return the decoded page.
+     * @throws IOException If the data can not be decoded.
+     */
+    default Image decode(InputStream inputStream, int targetWidth, int targetHeight) throws IOException {
+        if (targetWidth > 0 && targetHeight > 0) {
+            byte[] data = inputStream.readAllBytes();
+            if (fitsIn(data, targetWidth, targetHeight)) {
+                return new Image(new ByteArrayInputStream(data));
+            }
+            return new Image(new ByteArrayInputStream(data), targetWidth, targetHeight, true, true);
+        }
+        return new Image(inputStream);
+    }
+
+    /**
+     * Checks if the page already fits in the target size, from the image header only.
+     * Pages whose size can not be read from the header are treated as larger than the target.
+     */
+    private static boolean fitsIn(byte[] data, int targetWidth, int targetHeight) {
+        try (ImageInputStream imageStream = ImageIO.createImageInputStream(new ByteArrayInputStream(data))) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(imageStream);
+            if (readers.hasNext()) {
+                ImageReader reader = readers.next();
+                try {
+                    reader.setInput(imageStream, true, true);
+                    return reader.getWidth(0) <= targetWidth && reader.getHeight(0) <= targetHeight;
+                } finally {
+                    reader.dispose();
+                }
+            }
+        } catch (IOException e) {
+            // Fall back to fitting the page in the target size
+        }
+        return false;
+    }
+
+    /**
+     * Returns the aspect ratio (width / height) of the given page, if it is known without decoding the page.
+     *
+     * @param index the index of the page.
+     * @return the aspect ratio, or 0 if it is unknown.
+     */
+    default double getAspectRatio(int index) {
+        return 0;
+    }
+
+    /**
+     * Returns a key identifying the current contents of the archive, used to store decoded pages in the
+     * DiskPageCache. Sources returning null are never stored on disk.
+     *
+     * @return the archive key, or null if the pages should not be stored.
+     */
+    default String getCacheKey() {
+        return null;
+    }
+
+    /**
+     * Checks if the given page is an animation that can be played with a GifAnimation.
+     *
+     * @param index the index of the page.
+     * @return true if the page is animated, false otherwise.
+     */
+    default boolean isAnimated(int index) {
+        return false;
+    }
+}
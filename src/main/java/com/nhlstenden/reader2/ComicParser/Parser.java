@@ -7,6 +7,7 @@ import java.io.File;
 /**
  * The Parser class is responsible for parsing different types of compressed comic files
  * and extracting their contents into a Chapter object.
+ * The file is handed to the ComicFormat that recognises its magic bytes, whatever its extension is.
  */
 public class Parser {
 
@@ -17,7 +18,7 @@ public class Parser {
      * Parses the selected compressed comic file and extracts its contents into the Chapter object.
      *
      * @return The Chapter object with the extracted contents.
-     * @throws Exception If no file is selected, no chapter is given, or the file type is unsupported.
+     * @throws Exception If no file is selected, no chapter is given, or no ComicFormat recognises the file.
      */
     public Chapter parse() throws Exception {
         // Check if a compressed comic file is selected
@@ -30,27 +31,13 @@ public class Parser {
             throw new Exception("No chapter given");
         }
 
-        // Determine the file type and use the appropriate parser
-        if (this.CompressedComic.getName().endsWith(".cbz") || this.CompressedComic.getName().endsWith(".zip")) {
-            // Use ZipParser for .cbz or .zip files
-            ZipParser zipParser = new ZipParser();
-            this.Chapter = zipParser.parse(this.CompressedComic, this.Chapter);
-            zipParser = null;
-            System.gc();
-        } else if (this.CompressedComic.getName().endsWith(".cbr")) {
-            // Use RarParser for .cbr files
-            RarParser rarParser = new RarParser();
-            this.Chapter = rarParser.parse(this.CompressedComic, this.Chapter);
-            rarParser = null;
-            System.gc();
-        } else if (this.CompressedComic.getName().endsWith(".nhlcomic")) {
-            // Use GifParser for .nhlcomic files
-            GifParser gifParser = new GifParser();
-            this.Chapter = gifParser.parse(this.CompressedComic, this.Chapter);
-        } else {
+        // Detect the format from the first bytes of the file, so misnamed archives are read correctly
+        ComicFormat format = ComicFormats.detect(this.CompressedComic);
+        if (format == null) {
             // Throw an exception for unsupported file types
             throw new Exception("Unsupported file type");
         }
+        this.Chapter = format.parse(this.CompressedComic, this.Chapter);
 
         // Return the Chapter object with the extracted contents
         return this.Chapter;
@@ -0,0 +1,100 @@
+package com.nhlstenden.reader2.ComicParser;
+
+import com.github.junrar.Archive;
+import com.github.junrar.exception.RarException;
+import com.github.junrar.rarfile.FileHeader;
+import com.nhlstenden.reader2.models.Chapter;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+
+/**
+ * ComicFormat for RAR based comics (.cbr), read by the RarParser.
+ * Only RAR 4 archives are recognised, RAR 5 archives can not be read by junrar.
+ */
+public class RarComicFormat implements ComicFormat {
+
+    @Override
+    public String getName() {
+        return "RAR";
+    }
+
+    @Override
+    public List<String> getExtensions() {
+        return List.of(".cbr");
+    }
+
+    @Override
+    public boolean matches(byte[] header, String fileName) {
+        // "Rar!" 1A 07 00
+        return ComicFormats.startsWith(header, 'R', 'a', 'r', '!', 0x1A, 0x07, 0x00);
+    }
+
+    /**
+     * Solid archives can only be decompressed from the start, pages are read from a spill of the whole archive.
+     */
+    @Override
+    public boolean supportsRandomAccess() {
+        return false;
+    }
+
+    @Override
+    public PageSource openPages(File compressedComic) throws IOException {
+        return new RarPageSource(compressedComic);
+    }
+
+    /**
+     * Reads the first page without extracting the archive into a spill. The first page is chosen from the headers,
+     * then the headers are walked in archive order up to it. Entries of a solid archive can only be decompressed
+     * in archive order, so in a solid archive the entries before the first page are decompressed into nothing.
+     */
+    @Override
+    public byte[] readFirstPage(File compressedComic) throws IOException {
+        try (Archive archive = new Archive(compressedComic)) {
+            FileHeader first = null;
+            String firstKey = null;
+
+            // Find the first image entry from the headers only
+            for (FileHeader fileHeader : archive.getFileHeaders()) {
+                if (fileHeader.isDirectory() || !ZipPageSource.isImageFile(fileHeader.getFileName())) {
+                    continue;
+                }
+                String key = NaturalOrder.key(fileHeader.getFileName());
+                if (first == null || key.compareTo(firstKey) < 0) {
+                    first = fileHeader;
+                    firstKey = key;
+                }
+            }
+
+            if (first == null) {
+                throw new IOException("No image found in " + compressedComic.getName());
+            }
+
+            boolean solid = archive.getMainHeader().isSolid();
+            FileHeader fileHeader;
+            while ((fileHeader = archive.nextFileHeader()) != null) {
+                if (fileHeader == first) {
+                    try (InputStream inputStream = archive.getInputStream(fileHeader)) {
+                        return inputStream.readAllBytes();
+                    }
+                }
+                if (solid && !fileHeader.isDirectory()) {
+                    try (InputStream inputStream = archive.getInputStream(fileHeader)) {
+                        inputStream.transferTo(OutputStream.nullOutputStream());
+                    }
+                }
+            }
+            throw new IOException("Failed to read " + first.getFileName() + " from " + compressedComic.getName());
+        } catch (RarException e) {
+            throw new IOException("Failed to read " + compressedComic.getName(), e);
+        }
+    }
+
+    @Override
+    public Chapter parse(File compressedComic, Chapter chapter) throws Exception {
+        return new RarParser().parse(compressedComic, chapter);
+    }
+}
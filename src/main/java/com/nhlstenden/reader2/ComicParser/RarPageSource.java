@@ -0,0 +1,301 @@
+package com.nhlstenden.reader2.ComicParser;
+
+import com.github.junrar.Archive;
+import com.github.junrar.exception.RarException;
+import com.github.junrar.rarfile.FileHeader;
+import com.nhlstenden.reader2.controllers.DatabaseController;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * PageSource for RAR based comics (.cbr).
+ *
+ * Solid RAR archives can only be decompressed from the start, so reading a single page would decompress every
+ * entry before it. Instead, the image entries are extracted once, in archive order, into a spill file in the
+ * local data directory, together with an index of the offset and length of every entry. Pages are then read from
+ * the spill file with positional reads. The spill is keyed by the path, size and modification time of the archive,
+ * so reopening the chapter reuses it without decompressing anything. Only the most recently used spills are kept,
+ * spills of open chapters are never deleted.
+ */
+public class RarPageSource implements PageSource {
+
+    private static final String SPILL_DIRECTORY = "rar-spill";
+    private static final int INDEX_VERSION = 1;
+
+    // Number of open sources per spill, the spills in use are skipped when pruning
+    private static final Map<String, Integer> openSpills = new ConcurrentHashMap<>();
+    // True once the unfinished extractions of an earlier run have been removed
+    private static boolean cleanedUp = false;
+
+    private final String cacheKey;
+    private final List<SpillEntry> entries;
+    private final FileChannel channel;
+    private boolean closed = false;
+
+    /**
+     * Opens the spill of the RAR archive, extracting the archive first if it has no spill yet.
+     *
+     * @param compressedComic The RAR file to be opened.
+     * @throws IOException If the archive can not be extracted or the spill can not be read.
+     */
+    public RarPageSource(File compressedComic) throws IOException {
+        Path spillDirectory = DatabaseController.getDataDirectory().resolve(SPILL_DIRECTORY);
+        Files.createDirectories(spillDirectory);
+        removeUnfinishedSpills(spillDirectory);
+
+        String spillName = DiskPageCache.archiveKey(compressedComic);
+        Path spillFile = spillDirectory.resolve(spillName + ".spill");
+        Path indexFile = spillDirectory.resolve(spillName + ".idx");
+
+        // Claim the spill before pruning, so it is not deleted while this source opens it
+        openSpills.merge(spillName, 1, Integer::sum);
+        try {
+            List<SpillEntry> index = Files.exists(spillFile) ? readIndex(indexFile) : null;
+            if (index == null) {
+                index = extract(compressedComic, spillFile, indexFile);
+                pruneSpills(spillDirectory);
+            } else {
+                // Mark the spill as recently used
+                Files.setLastModifiedTime(indexFile, FileTime.fromMillis(System.currentTimeMillis()));
+            }
+
+            // Put the entries in page order, the spill itself is in archive order
+            NaturalOrder.sort(index, SpillEntry::name);
+            this.entries = index;
+            this.cacheKey = spillName;
+            this.channel = FileChannel.open(spillFile, StandardOpenOption.READ);
+        } catch (IOException | RuntimeException e) {
+            releaseSpill(spillName);
+            throw e;
+        }
+    }
+
+    @Override
+    public int size() {
+        return entries.size();
+    }
+
+    @Override
+    public String getName(int index) {
+        return entries.get(index).name();
+    }
+
+    /**
+     * Reads the page from the spill file. Positional reads can run on several threads at once, and unlike a memory
+     * mapping they leave nothing behind that keeps the spill file locked once the source is closed.
+     */
+    @Override
+    public InputStream openPage(int index) throws IOException {
+        SpillEntry entry = entries.get(index);
+        ByteBuffer buffer = ByteBuffer.allocate(entry.length());
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, entry.offset() + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of spill file");
+            }
+        }
+        return new ByteArrayInputStream(buffer.array());
+    }
+
+    @Override
+    public String getCacheKey() {
+        return cacheKey;
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        try {
+            channel.close();
+        } finally {
+            releaseSpill(cacheKey);
+        }
+    }
+
+    private static void releaseSpill(String spillName) {
+        openSpills.computeIfPresent(spillName, (name, count) -> count > 1 ? count - 1 : null);
+    }
+
+    /**
+     * Extracts the image entries sequentially into the spill file and writes its index.
+     * Both files are written under a temporary name first, so an interrupted extraction is never reused.
+     */
+    private static List<SpillEntry> extract(File compressedComic, Path spillFile, Path indexFile) throws IOException {
+        List<SpillEntry> index = new ArrayList<>();
+        Path tempSpill = spillFile.resolveSibling(spillFile.getFileName() + ".tmp");
+
+        try (Archive archive = new Archive(compressedComic);
+             OutputStream outputStream = new BufferedOutputStream(Files.newOutputStream(tempSpill))) {
+
+            boolean solid = archive.getMainHeader().isSolid();
+            long offset = 0;
+            FileHeader fileHeader;
+            while ((fileHeader = archive.nextFileHeader()) != null) {
+                if (fileHeader.isDirectory()) {
+                    continue;
+                }
+                if (!ZipPageSource.isImageFile(fileHeader.getFileName())) {
+                    // A solid archive can not skip an entry, the entries after it depend on it
+                    if (solid) {
+                        try (InputStream inputStream = archive.getInputStream(fileHeader)) {
+                            inputStream.transferTo(OutputStream.nullOutputStream());
+                        }
+                    }
+                    continue;
+                }
+
+                // Decompress the entry in archive order, straight after the previous entry
+                long start = offset;
+                try (InputStream inputStream = archive.getInputStream(fileHeader)) {
+                    offset += inputStream.transferTo(outputStream);
+                }
+                index.add(new SpillEntry(fileHeader.getFileName(), start, (int) (offset - start)));
+            }
+
+            if (offset > Integer.MAX_VALUE) {
+                throw new IOException("Archive is too large to be spilled: " + compressedComic.getName());
+            }
+        } catch (RarException e) {
+            Files.deleteIfExists(tempSpill);
+            throw new IOException("Failed to extract " + compressedComic.getName(), e);
+        } catch (IOException e) {
+            Files.deleteIfExists(tempSpill);
+            throw e;
+        }
+
+        writeIndex(indexFile, index);
+        Files.move(tempSpill, spillFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return index;
+    }
+
+    private static void writeIndex(Path indexFile, List<SpillEntry> index) throws IOException {
+        Path tempIndex = indexFile.resolveSibling(indexFile.getFileName() + ".tmp");
+        try (DataOutputStream outputStream = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempIndex)))) {
+            outputStream.writeInt(INDEX_VERSION);
+            outputStream.writeInt(index.size());
+            for (SpillEntry entry : index) {
+                outputStream.writeUTF(entry.name());
+                outputStream.writeLong(entry.offset());
+                outputStream.writeInt(entry.length());
+            }
+        }
+        Files.move(tempIndex, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Reads the index of an existing spill.
+     *
+     * @return the entries in archive order, or null if the index is missing or unreadable.
+     */
+    private static List<SpillEntry> readIndex(Path indexFile) {
+        if (!Files.exists(indexFile)) {
+            return null;
+        }
+        try (DataInputStream inputStream = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexFile)))) {
+            if (inputStream.readInt() != INDEX_VERSION) {
+                return null;
+            }
+            int count = inputStream.readInt();
+            List<SpillEntry> index = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                index.add(new SpillEntry(inputStream.readUTF(), inputStream.readLong(), inputStream.readInt()));
+            }
+            return index;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Deletes the least recently used spills when there are more than "reader.rarspill.max" (default 8).
+     * Spills of open chapters are kept, a spill that can not be deleted is skipped.
+     */
+    private static void pruneSpills(Path spillDirectory) {
+        int maxSpills = Integer.getInteger("reader.rarspill.max", 8);
+        List<Path> indexes;
+        try (Stream<Path> files = Files.list(spillDirectory)) {
+            indexes = files.filter(file -> file.getFileName().toString().endsWith(".idx"))
+                    .sorted(Comparator.comparing(RarPageSource::lastModified).reversed())
+                    .toList();
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+
+        for (Path indexFile : indexes.subList(Math.min(maxSpills, indexes.size()), indexes.size())) {
+            String name = indexFile.getFileName().toString();
+            String spillName = name.substring(0, name.length() - 4);
+            if (openSpills.containsKey(spillName)) {
+                continue;
+            }
+            try {
+                Files.deleteIfExists(indexFile);
+                Files.deleteIfExists(indexFile.resolveSibling(spillName + ".spill"));
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Removes the temporary files of extractions that were interrupted in an earlier run, once per run.
+     * No extraction has started yet when this runs, so every temporary file is left over.
+     */
+    private static synchronized void removeUnfinishedSpills(Path spillDirectory) {
+        if (cleanedUp) {
+            return;
+        }
+        cleanedUp = true;
+        try (Stream<Path> files = Files.list(spillDirectory)) {
+            for (Path file : files.filter(file -> file.getFileName().toString().endsWith(".tmp")).toList()) {
+                try {
+                    Files.deleteIfExists(file);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static FileTime lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file);
+        } catch (IOException e) {
+            return FileTime.fromMillis(0);
+        }
+    }
+
+    /**
+     * The location of an extracted entry in the spill file.
+     */
+    private record SpillEntry(String name, long offset, int length) {
+    }
+}
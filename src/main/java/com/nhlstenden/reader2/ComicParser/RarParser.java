@@ -1,115 +1,31 @@
 package com.nhlstenden.reader2.ComicParser;
 
-import com.github.junrar.Archive;
-import com.github.junrar.rarfile.FileHeader;
 import com.nhlstenden.reader2.models.Chapter;
-import javafx.scene.image.Image;
 
 import java.io.File;
-import java.io.InputStream;
-import java.util.ArrayList;
-import java.util.Comparator;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.List;
 
 public class RarParser {
 
     /**
-     * Parses a RAR file to extract images and returns a Chapter.
+     * Parses a RAR file and sets a lazily decoded page list on the Chapter.
+     *
+     * The archive is decompressed once into a spill file on local disk, which is reused when the chapter
+     * is opened again. Every page is read from the spill and decoded when it is first requested.
      *
      * @param compressedComic The RAR file to be parsed.
      * @param chapter The Chapter object to be updated.
-     * @return Chapter containing the extracted images.
+     * @return Chapter containing the page list.
      * @throws Exception If an error occurs during parsing.
      */
     public Chapter parse(File compressedComic, Chapter chapter) throws Exception {
 
-        // List to store the extracted images
-        List<Image> images = new ArrayList<>();
-
-        // Map to store images and their file names
-        Map<String, Image> imageMap = new HashMap<>();
-
-        // Open the RAR archive
-        try (Archive archive = new Archive(compressedComic)) {
-
-            // FileHeader to store the current file in the archive
-            FileHeader fileHeader;
-
-            // Iterate through each file in the archive
-            while ((fileHeader = archive.nextFileHeader()) != null) {
-
-                // Check if the file is a directory
-                if (!fileHeader.isDirectory()) {
-
-                    // Check if the file is an image
-                    if (isImageFile(fileHeader.getFileNameString())) {
-
-                        // If the file is an image, create an Image object from the input stream
-                        try (InputStream inputStream = archive.getInputStream(fileHeader)) {
-
-                            // Create an Image object from the input stream
-                            Image image = new Image(inputStream);
-
-                            // Add the image and its file name to the map
-                            imageMap.put(fileHeader.getFileNameString(), image);
-                        }
-                    }
-                }
-            }
-
-            // Sort the map entries by file name and add the images to the list
-            imageMap.entrySet().stream()
-                    .sorted((entry1, entry2) -> {
-                        String name1 = entry1.getKey();
-                        String name2 = entry2.getKey();
-                        return compareFileNames(name1, name2);
-                    })
-                    .forEachOrdered(entry -> images.add(entry.getValue()));
+        // Extract or reopen the spill of the archive, the pages are decoded on demand
+        RarPageSource pageSource = new RarPageSource(compressedComic);
 
-            // Set the sorted images to the chapter
-            chapter.setPages(images);
-        }
+        // Set the lazy page list to the chapter
+        chapter.setPages(new PageList(chapter.getId(), pageSource));
 
         // Return the chapter now with the pages set
         return chapter;
     }
-
-    /**
-     * Checks if a file is an image based on its extension.
-     *
-     * @param fileName The name of the file.
-     * @return True if the file is an image, false otherwise.
-     */
-    private boolean isImageFile(String fileName) {
-        String lowerCaseName = fileName.toLowerCase();
-        return lowerCaseName.endsWith(".png") || lowerCaseName.endsWith(".jpg") || lowerCaseName.endsWith(".jpeg");
-    }
-
-    /**
-     * Compares two file names, handling both numerical and alphabetical parts.
-     *
-     * @param name1 The first file name.
-     * @param name2 The second file name.
-     * @return A negative integer, zero, or a positive integer as the first argument is less than, equal to, or greater than the second.
-     */
-    private int compareFileNames(String name1, String name2) {
-        String[] parts1 = name1.split("\\D+");
-        String[] parts2 = name2.split("\\D+");
-
-        int length = Math.min(parts1.length, parts2.length);
-        for (int i = 0; i < length; i++) {
-            if (parts1[i].isEmpty() || parts2[i].isEmpty()) {
-                continue;
-            }
-            int num1 = Integer.parseInt(parts1[i]);
-            int num2 = Integer.parseInt(parts2[i]);
-            int result = Integer.compare(num1, num2);
-            if (result != 0) {
-                return result;
-            }
-        }
-        return name1.compareTo(name2);
-    }
-}
\ No newline at end of file
+}
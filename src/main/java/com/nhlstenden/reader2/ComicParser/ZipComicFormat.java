@@ -0,0 +1,59 @@
+package com.nhlstenden.reader2.ComicParser;
+
+import com.nhlstenden.reader2.models.Chapter;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * ComicFormat for ZIP based comics (.cbz / .zip), read by the ZipParser.
+ * Also reads CBR files that are ZIP archives under the wrong name.
+ */
+public class ZipComicFormat implements ComicFormat {
+
+    @Override
+    public String getName() {
+        return "ZIP";
+    }
+
+    @Override
+    public List<String> getExtensions() {
+        return List.of(".cbz", ".zip");
+    }
+
+    @Override
+    public boolean matches(byte[] header, String fileName) {
+        return isZip(header);
+    }
+
+    @Override
+    public boolean supportsRandomAccess() {
+        return true;
+    }
+
+    @Override
+    public boolean isZipContainer() {
+        return true;
+    }
+
+    @Override
+    public PageSource openPages(File compressedComic) throws IOException {
+        return new ZipPageSource(compressedComic);
+    }
+
+    @Override
+    public Chapter parse(File compressedComic, Chapter chapter) throws Exception {
+        return new ZipParser().parse(compressedComic, chapter);
+    }
+
+    /**
+     * Checks for the signature of a local file header, or of the end record of an empty archive.
+     *
+     * @param header the first bytes of a file.
+     * @return true if the file is a ZIP archive, false otherwise.
+     */
+    static boolean isZip(byte[] header) {
+        return ComicFormats.startsWith(header, 'P', 'K', 0x03, 0x04) || ComicFormats.startsWith(header, 'P', 'K', 0x05, 0x06);
+    }
+}
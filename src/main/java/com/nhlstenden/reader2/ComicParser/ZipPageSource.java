@@ -0,0 +1,95 @@
+package com.nhlstenden.reader2.ComicParser;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * PageSource for ZIP based comics (.cbz / .zip).
+ * The image entries are indexed once when the source is created and the ZipFile
+ * handle is kept open so pages can be read on demand until the source is closed.
+ */
+public class ZipPageSource implements PageSource {
+
+    private final ZipFile zip;
+    private final List<ZipEntry> entries;
+    private final String cacheKey;
+
+    /**
+     * Opens the ZIP archive and indexes its image entries in page order.
+     *
+     * @param compressedComic The ZIP file to be opened.
+     * @throws IOException If the archive can not be opened.
+     */
+    public ZipPageSource(File compressedComic) throws IOException {
+        this.zip = new ZipFile(compressedComic);
+        this.entries = new ArrayList<>();
+        this.cacheKey = DiskPageCache.archiveKey(compressedComic);
+
+        // A normalized CBZ lists its pages in order, so nothing has to be sorted
+        List<String> pageIndex = CbzNormalizer.readPageIndex(zip);
+        if (pageIndex != null) {
+            for (String pageName : pageIndex) {
+                ZipEntry entry = zip.getEntry(pageName);
+                if (entry != null) {
+                    entries.add(entry);
+                }
+            }
+            return;
+        }
+
+        // Iterate through each entry in the ZIP file and keep the images
+        Enumeration<? extends ZipEntry> zipEntries = zip.entries();
+        while (zipEntries.hasMoreElements()) {
+            ZipEntry entry = zipEntries.nextElement();
+            if (!entry.isDirectory() && isImageFile(entry.getName())) {
+                entries.add(entry);
+            }
+        }
+
+        // Sort the entries by file name, no image is decoded at this point
+        NaturalOrder.sort(entries, ZipEntry::getName);
+    }
+
+    @Override
+    public int size() {
+        return entries.size();
+    }
+
+    @Override
+    public String getName(int index) {
+        return entries.get(index).getName();
+    }
+
+    @Override
+    public InputStream openPage(int index) throws IOException {
+        return zip.getInputStream(entries.get(index));
+    }
+
+    @Override
+    public String getCacheKey() {
+        return cacheKey;
+    }
+
+    @Override
+    public void close() throws IOException {
+        zip.close();
+    }
+
+    /**
+     * Checks if a file is an image based on its extension.
+     * Shared by the page sources, the normalizer and the cover extractor, so they agree on what a page is.
+     *
+     * @param fileName The name of the file.
+     * @return True if the file is an image, false otherwise.
+     */
+    static boolean isImageFile(String fileName) {
+        String lowerCaseName = fileName.toLowerCase();
+        return lowerCaseName.endsWith(".png") || lowerCaseName.endsWith(".jpg") || lowerCaseName.endsWith(".jpeg");
+    }
+}
@@ -6,11 +6,14 @@ import com.nhlstenden.reader2.models.Chapter;
 import java.sql.*;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 public class ChapterLibrary {
 
     private final DatabaseController dbController;
+    private final EntityMapper<Chapter> mapper = EntityMappers.get(Chapter.class);
 
     public ChapterLibrary() {
         this.dbController = DatabaseController.getInstance();
@@ -28,15 +31,9 @@ public class ChapterLibrary {
      * @return the generated ID of the new chapter, or -1 if the insertion fails
      */
     public int addChapter(Chapter chapter) {
-        this.dbController.openConnection();
-        String sql = "INSERT INTO Chapter (Title, SerieID, Read, CurrentPage, LastRead) VALUES (?, ?, ?, ?, ?)";
-        try (Connection conn = dbController.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
-            pstmt.setString(1, chapter.getTitle());
-            pstmt.setInt(2, chapter.getSerieID());
-            pstmt.setBoolean(3, chapter.isRead());
-            pstmt.setInt(4, chapter.getCurrentPage());
-            pstmt.setTimestamp(5, Timestamp.valueOf(chapter.getLastRead()));
+        try (Connection conn = dbController.getWriteConnection();
+             PreparedStatement pstmt = conn.prepareStatement(mapper.getInsertSql(), Statement.RETURN_GENERATED_KEYS)) {
+            mapper.bindInsert(pstmt, chapter);
             pstmt.executeUpdate();
             ResultSet rs = pstmt.getGeneratedKeys();
             if (rs.next()) {
@@ -48,6 +45,81 @@ public class ChapterLibrary {
         return -1;
     }
 
+    /**
+     * Adds a batch of chapters of one series to the database in a single transaction.
+     *
+     * This method first looks up the titles that already exist for the series in one query and skips those chapters,
+     * as well as duplicate titles within the batch. The remaining chapters are inserted with a single prepared statement
+     * and committed at once. The generated IDs are set on the inserted chapters and returned in insertion order.
+     * If an error occurs, the transaction is rolled back, the stack trace is printed and an empty array is returned.
+     *
+     * @param serieId the ID of the series the chapters belong to
+     * @param chapters the chapters to be added
+     * @return the generated IDs of the inserted chapters, in the order they were inserted
+     */
+    public int[] addChapters(int serieId, List<Chapter> chapters) {
+        // Hold the writer for the lookup too, so no other thread adds the same titles in between
+        try (Connection conn = dbController.getWriteConnection()) {
+            // Collect the titles that already exist for this series
+            Set<String> existingTitles = new HashSet<>();
+            try (PreparedStatement pstmt = conn.prepareStatement("SELECT Title FROM Chapter WHERE SerieId = ?")) {
+                pstmt.setInt(1, serieId);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        existingTitles.add(rs.getString(1));
+                    }
+                }
+            }
+
+            // Only insert the chapters with a new title
+            List<Chapter> newChapters = new ArrayList<>();
+            for (Chapter chapter : chapters) {
+                if (existingTitles.add(chapter.getTitle())) {
+                    newChapters.add(chapter);
+                }
+            }
+            if (newChapters.isEmpty()) {
+                return new int[0];
+            }
+
+            boolean autoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+            try (PreparedStatement pstmt = conn.prepareStatement(mapper.getInsertSql());
+                 Statement stmt = conn.createStatement()) {
+                for (Chapter chapter : newChapters) {
+                    chapter.setSerieID(serieId);
+                    mapper.bindInsert(pstmt, chapter);
+                    pstmt.addBatch();
+                }
+                pstmt.executeBatch();
+
+                // Rows inserted in one transaction get consecutive IDs, ending at the last inserted row
+                long lastId;
+                try (ResultSet rs = stmt.executeQuery("SELECT last_insert_rowid()")) {
+                    rs.next();
+                    lastId = rs.getLong(1);
+                }
+                conn.commit();
+
+                int[] ids = new int[newChapters.size()];
+                long firstId = lastId - newChapters.size() + 1;
+                for (int i = 0; i < ids.length; i++) {
+                    ids[i] = (int) (firstId + i);
+                    newChapters.get(i).setId(ids[i]);
+                }
+                return ids;
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(autoCommit);
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return new int[0];
+    }
+
     /**
      * Retrieves a chapter from the database by its ID.
      *
@@ -59,25 +131,13 @@ public class ChapterLibrary {
      * @return the Chapter object if found, or null if not found
      */
     public Chapter getChapter(int id) {
-        this.dbController.openConnection();
-        String sql = "SELECT * FROM Chapter WHERE ID = ?";
-        try (Connection conn = dbController.getConnection();
+        String sql = mapper.getSelectSql() + " WHERE Id = ?";
+        try (Connection conn = dbController.getReadConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
             pstmt.setInt(1, id);
             ResultSet rs = pstmt.executeQuery();
             if (rs.next()) {
-                Chapter temp = new Chapter(
-                        rs.getString("Title"),
-                        null,
-                        rs.getBoolean("Read"),
-                        rs.getInt("CurrentPage"),
-                        null
-                );
-                if (rs.getTimestamp("LastRead") != null) {
-                    temp.setLastRead(rs.getTimestamp("LastRead").toLocalDateTime());
-                }
-                temp.setId(rs.getInt("Id"));
-                return temp;
+                return mapper.map(rs);
             }
         } catch (SQLException e) {
             e.printStackTrace();
@@ -96,25 +156,13 @@ public class ChapterLibrary {
      * @return the Chapter object if found, or null if not found
      */
     public Chapter getChapterByName(String name) {
-        this.dbController.openConnection();
-        String sql = "SELECT * FROM Chapter WHERE Title = ?";
-        try (Connection conn = dbController.getConnection();
+        String sql = mapper.getSelectSql() + " WHERE Title = ?";
+        try (Connection conn = dbController.getReadConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
             pstmt.setString(1, name);
             ResultSet rs = pstmt.executeQuery();
             if (rs.next()) {
-                Chapter temp = new Chapter(
-                        rs.getString("Title"),
-                        null,
-                        rs.getBoolean("Read"),
-                        rs.getInt("CurrentPage"),
-                        null
-                );
-                if (rs.getTimestamp("LastRead") != null) {
-                    temp.setLastRead(rs.getTimestamp("LastRead").toLocalDateTime());
-                }
-                temp.setId(rs.getInt("Id"));
-                return temp;
+                return mapper.map(rs);
             }
         } catch (SQLException e) {
             e.printStackTrace();
@@ -133,26 +181,14 @@ public class ChapterLibrary {
      * @return a list of Chapter objects for the specified series
      */
     public List<Chapter> getChapterBySerie(int serieId) {
-        this.dbController.openConnection();
         List<Chapter> chapters = new ArrayList<>();
-        String sql = "SELECT * FROM Chapter WHERE SerieId = ?";
-        try (Connection conn = dbController.getConnection();
+        String sql = mapper.getSelectSql() + " WHERE SerieId = ?";
+        try (Connection conn = dbController.getReadConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
             pstmt.setInt(1, serieId);
             ResultSet rs = pstmt.executeQuery();
             while (rs.next()) {
-                Chapter temp = new Chapter(
-                        rs.getString("Title"),
-                        null,
-                        rs.getBoolean("Read"),
-                        rs.getInt("CurrentPage"),
-                        null
-                );
-                if (rs.getTimestamp("LastRead") != null) {
-                    temp.setLastRead(rs.getTimestamp("LastRead").toLocalDateTime());
-                }
-                temp.setId(rs.getInt("Id"));
-                chapters.add(temp);
+                chapters.add(mapper.map(rs));
             }
         } catch (SQLException e) {
             e.printStackTrace();
@@ -170,25 +206,13 @@ public class ChapterLibrary {
      * @return a list of all Chapter objects
      */
     public List<Chapter> getAllChapters() {
-        this.dbController.openConnection();
         List<Chapter> chapters = new ArrayList<>();
-        String sql = "SELECT * FROM Chapter";
-        try (Connection conn = dbController.getConnection();
+        String sql = mapper.getSelectSql();
+        try (Connection conn = dbController.getReadConnection();
              Statement stmt = conn.createStatement();
              ResultSet rs = stmt.executeQuery(sql)) {
             while (rs.next()) {
-                Chapter temp = new Chapter(
-                        rs.getString("Title"),
-                        null,
-                        rs.getBoolean("Read"),
-                        rs.getInt("CurrentPage"),
-                        null
-                );
-                if (rs.getTimestamp("LastRead") != null) {
-                    temp.setLastRead(rs.getTimestamp("LastRead").toLocalDateTime());
-                }
-                temp.setId(rs.getInt("Id"));
-                chapters.add(temp);
+                chapters.add(mapper.map(rs));
             }
         } catch (SQLException e) {
             e.printStackTrace();
@@ -208,9 +232,8 @@ public class ChapterLibrary {
      * @return true if the update was successful, false otherwise
      */
     public boolean setLastRead(int id) {
-        this.dbController.openConnection();
         String sql = "UPDATE Chapter SET LastRead = ? WHERE ID = ?";
-        try (Connection conn = dbController.getConnection();
+        try (Connection conn = dbController.getWriteConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
             pstmt.setTimestamp(1, Timestamp.valueOf(LocalDateTime.now()));
             pstmt.setInt(2, id);
@@ -233,16 +256,9 @@ public class ChapterLibrary {
      * @return true if the update was successful, false otherwise
      */
     public boolean updateChapter(Chapter chapter) {
-        this.dbController.openConnection();
-        String sql = "UPDATE Chapter SET Title = ?, SerieID = ?, Read = ?, CurrentPage = ?, LastRead = ? WHERE ID = ?";
-        try (Connection conn = dbController.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setString(1, chapter.getTitle());
-            pstmt.setInt(2, chapter.getSerieID());
-            pstmt.setBoolean(3, chapter.isRead());
-            pstmt.setInt(4, chapter.getCurrentPage());
-            pstmt.setTimestamp(5, Timestamp.valueOf(chapter.getLastRead()));
-            pstmt.setInt(6, chapter.getId());
+        try (Connection conn = dbController.getWriteConnection();
+             PreparedStatement pstmt = conn.prepareStatement(mapper.getUpdateSql())) {
+            mapper.bindUpdate(pstmt, chapter);
             return pstmt.executeUpdate() > 0;
         } catch (SQLException e) {
             e.printStackTrace();
@@ -261,9 +277,8 @@ public class ChapterLibrary {
      * @return true if the deletion was successful, false otherwise
      */
     public boolean deleteChapter(int id) {
-        this.dbController.openConnection();
         String sql = "DELETE FROM Chapter WHERE ID = ?";
-        try (Connection conn = dbController.getConnection();
+        try (Connection conn = dbController.getWriteConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
             pstmt.setInt(1, id);
             return pstmt.executeUpdate() > 0;
@@ -284,9 +299,8 @@ public class ChapterLibrary {
      * @return true if the deletion was successful, false otherwise
      */
     public boolean deleteChapterBySerie(int serieId) {
-        this.dbController.openConnection();
         String sql = "DELETE FROM Chapter WHERE SerieId = ?";
-        try (Connection conn = dbController.getConnection();
+        try (Connection conn = dbController.getWriteConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
             pstmt.setInt(1, serieId);
             return pstmt.executeUpdate() > 0;
@@ -0,0 +1,271 @@
+package com.nhlstenden.reader2.DataLibrary;
+
+import com.nhlstenden.reader2.annotations.Exclude;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * The EntityMapper class maps one model class to its database table.
+ *
+ * The model is inspected once when the mapper is created. The table is named after the class and every field
+ * that is not annotated with @Exclude becomes a column, a field named "Id" (in any case) is the primary key.
+ * The INSERT, UPDATE and SELECT statements and a MethodHandle based accessor per column are prepared up front,
+ * so writing a model or reading a row does not use reflection anymore. Rows are read by column index,
+ * in the order of the SELECT statement returned by {@link #getSelectSql()}.
+ *
+ * @param <T> the type of the model
+ */
+public final class EntityMapper<T> {
+
+    private final String tableName;
+    private final Supplier<T> factory;
+    private final Column idColumn;
+    private final Column[] columns;
+
+    private final String insertSql;
+    private final String updateSql;
+    private final String selectSql;
+
+    /**
+     * Inspects the model class and prepares the statements and column accessors.
+     *
+     * @param type the model class
+     * @param factory creates an empty model instance, used when mapping rows
+     * @throws IllegalArgumentException if the model has no id field or a field type is not supported
+     */
+    EntityMapper(Class<T> type, Supplier<T> factory) {
+        this.tableName = type.getSimpleName();
+        this.factory = factory;
+
+        Column id = null;
+        List<Column> mapped = new ArrayList<>();
+
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.privateLookupIn(type, MethodHandles.lookup());
+            for (Field field : type.getDeclaredFields()) {
+                boolean isId = field.getName().equalsIgnoreCase("id");
+                if (!isId && field.isAnnotationPresent(Exclude.class)) {
+                    continue;
+                }
+                Column column = new Column(field, lookup);
+                if (isId) {
+                    id = column;
+                } else {
+                    mapped.add(column);
+                }
+            }
+        } catch (IllegalAccessException e) {
+            throw new IllegalArgumentException("Can not access the fields of " + type.getName(), e);
+        }
+
+        if (id == null) {
+            throw new IllegalArgumentException(type.getName() + " has no id field");
+        }
+        this.idColumn = id;
+        this.columns = mapped.toArray(new Column[0]);
+
+        // Build the SQL statements once
+        StringBuilder names = new StringBuilder();
+        StringBuilder placeholders = new StringBuilder();
+        StringBuilder assignments = new StringBuilder();
+        for (Column column : columns) {
+            if (names.length() > 0) {
+                names.append(", ");
+                placeholders.append(", ");
+                assignments.append(", ");
+            }
+            names.append(column.name);
+            placeholders.append("?");
+            assignments.append(column.name).append(" = ?");
+        }
+
+        this.insertSql = "INSERT INTO " + tableName + " (" + names + ") VALUES (" + placeholders + ")";
+        this.updateSql = "UPDATE " + tableName + " SET " + assignments + " WHERE " + idColumn.name + " = ?";
+        this.selectSql = "SELECT " + idColumn.name + ", " + names + " FROM " + tableName;
+    }
+
+    public String getTableName() {
+        return tableName;
+    }
+
+    /**
+     * Returns the INSERT statement of the model, with one parameter per column.
+     *
+     * @return the INSERT statement
+     */
+    public String getInsertSql() {
+        return insertSql;
+    }
+
+    /**
+     * Returns the UPDATE statement of the model, with one parameter per column followed by the id.
+     *
+     * @return the UPDATE statement
+     */
+    public String getUpdateSql() {
+        return updateSql;
+    }
+
+    /**
+     * Returns the SELECT statement of the model without a WHERE clause, conditions can be appended to it.
+     *
+     * @return the SELECT statement
+     */
+    public String getSelectSql() {
+        return selectSql;
+    }
+
+    /**
+     * Binds the columns of the model to the parameters of the INSERT statement.
+     *
+     * @param statement the statement prepared from {@link #getInsertSql()}
+     * @param model the model to be inserted
+     * @throws SQLException if a parameter can not be set
+     */
+    public void bindInsert(PreparedStatement statement, T model) throws SQLException {
+        for (int i = 0; i < columns.length; i++) {
+            columns[i].bind(statement, i + 1, model);
+        }
+    }
+
+    /**
+     * Binds the columns and the id of the model to the parameters of the UPDATE statement.
+     *
+     * @param statement the statement prepared from {@link #getUpdateSql()}
+     * @param model the model to be updated
+     * @throws SQLException if a parameter can not be set
+     */
+    public void bindUpdate(PreparedStatement statement, T model) throws SQLException {
+        bindInsert(statement, model);
+        idColumn.bind(statement, columns.length + 1, model);
+    }
+
+    /**
+     * Creates a model from the current row of a result set of the SELECT statement.
+     *
+     * @param resultSet the result set, positioned on a row
+     * @return the mapped model
+     * @throws SQLException if a column can not be read
+     */
+    public T map(ResultSet resultSet) throws SQLException {
+        T model = factory.get();
+        idColumn.read(resultSet, 1, model);
+        for (int i = 0; i < columns.length; i++) {
+            columns[i].read(resultSet, i + 2, model);
+        }
+        return model;
+    }
+
+    /**
+     * Sets the id of the model, for example after it has been inserted.
+     *
+     * @param model the model
+     * @param id the id to set
+     */
+    public void setId(T model, int id) {
+        try {
+            idColumn.setter.invokeExact((Object) model, (Object) id);
+        } catch (Throwable e) {
+            throw new IllegalStateException("Failed to set the id of " + tableName, e);
+        }
+    }
+
+    /**
+     * A mapped column with its accessors and JDBC conversion.
+     */
+    private static final class Column {
+
+        private final String name;
+        private final Class<?> type;
+        private final MethodHandle getter;
+        private final MethodHandle setter;
+
+        Column(Field field, MethodHandles.Lookup lookup) throws IllegalAccessException {
+            String fieldName = field.getName();
+            this.name = Character.toUpperCase(fieldName.charAt(0)) + fieldName.substring(1);
+            this.type = field.getType();
+
+            if (type != String.class && type != int.class && type != Integer.class
+                    && type != long.class && type != Long.class && type != boolean.class && type != Boolean.class && type != LocalDateTime.class) {
+                throw new IllegalArgumentException("Unsupported column type " + type.getName() + " for " + fieldName);
+            }
+
+            // Adapt the handles to (Object)Object and (Object,Object)void, so they can be invoked exactly
+            this.getter = lookup.unreflectGetter(field).asType(MethodType.methodType(Object.class, Object.class));
+            this.setter = lookup.unreflectSetter(field).asType(MethodType.methodType(void.class, Object.class, Object.class));
+        }
+
+        void bind(PreparedStatement statement, int index, Object model) throws SQLException {
+            Object value;
+            try {
+                value = (Object) getter.invokeExact(model);
+            } catch (Throwable e) {
+                throw new IllegalStateException("Failed to read column " + name, e);
+            }
+
+            if (value == null) {
+                statement.setNull(index, sqlType());
+            } else if (type == String.class) {
+                statement.setString(index, (String) value);
+            } else if (type == int.class || type == Integer.class) {
+                statement.setInt(index, (Integer) value);
+            } else if (type == long.class || type == Long.class) {
+                statement.setLong(index, (Long) value);
+            } else if (type == boolean.class || type == Boolean.class) {
+                statement.setBoolean(index, (Boolean) value);
+            } else {
+                statement.setTimestamp(index, Timestamp.valueOf((LocalDateTime) value));
+            }
+        }
+
+        void read(ResultSet resultSet, int index, Object model) throws SQLException {
+            Object value;
+            if (type == String.class) {
+                value = resultSet.getString(index);
+            } else if (type == int.class || type == Integer.class) {
+                int number = resultSet.getInt(index);
+                value = (resultSet.wasNull() && type == Integer.class) ? null : number;
+            } else if (type == long.class || type == Long.class) {
+                long number = resultSet.getLong(index);
+                value = (resultSet.wasNull() && type == Long.class) ? null : number;
+            } else if (type == boolean.class || type == Boolean.class) {
+                boolean flag = resultSet.getBoolean(index);
+                value = (resultSet.wasNull() && type == Boolean.class) ? null : flag;
+            } else {
+                Timestamp timestamp = resultSet.getTimestamp(index);
+                value = timestamp != null ? timestamp.toLocalDateTime() : null;
+            }
+
+            try {
+                setter.invokeExact(model, value);
+            } catch (Throwable e) {
+                throw new IllegalStateException("Failed to write column " + name, e);
+            }
+        }
+
+        private int sqlType() {
+            if (type == String.class) {
+                return Types.VARCHAR;
+            } else if (type == Integer.class) {
+                return Types.INTEGER;
+            } else if (type == Long.class) {
+                return Types.BIGINT;
+            } else if (type == Boolean.class) {
+                return Types.BOOLEAN;
+            }
+            return Types.TIMESTAMP;
+        }
+    }
+}
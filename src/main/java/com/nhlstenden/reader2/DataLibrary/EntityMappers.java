@@ -0,0 +1,54 @@
+package com.nhlstenden.reader2.DataLibrary;
+
+import com.nhlstenden.reader2.models.Author;
+import com.nhlstenden.reader2.models.Chapter;
+import com.nhlstenden.reader2.models.Note;
+import com.nhlstenden.reader2.models.Page;
+import com.nhlstenden.reader2.models.Serie;
+import com.nhlstenden.reader2.models.Tag;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Registry of the EntityMapper of every model that is stored in the database.
+ * Each model is inspected once, the first time its mapper is requested.
+ */
+public final class EntityMappers {
+
+    // Creates an empty instance of each known model
+    private static final Map<Class<?>, Supplier<?>> FACTORIES = Map.of(
+            Serie.class, () -> new Serie(null, null, false, false, 0, false, null),
+            Chapter.class, () -> new Chapter(null, null, false, 0, null),
+            Note.class, () -> new Note(0, 0, 0, null),
+            Page.class, () -> new Page(0, null, 0, 0, 0, 0, 0, 0),
+            Tag.class, () -> new Tag(0, null),
+            Author.class, () -> new Author(0, null)
+    );
+
+    // Mappers that have been built so far
+    private static final Map<Class<?>, EntityMapper<?>> MAPPERS = new ConcurrentHashMap<>();
+
+    private EntityMappers() {
+    }
+
+    /**
+     * Returns the mapper of a model class, building it on first use.
+     *
+     * @param <T> the type of the model
+     * @param type the model class
+     * @return the mapper of the model
+     * @throws IllegalArgumentException if the class is not a known model
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> EntityMapper<T> get(Class<T> type) {
+        return (EntityMapper<T>) MAPPERS.computeIfAbsent(type, key -> {
+            Supplier<?> factory = FACTORIES.get(key);
+            if (factory == null) {
+                throw new IllegalArgumentException("No mapper registered for " + key.getName());
+            }
+            return new EntityMapper<>(type, (Supplier<T>) factory);
+        });
+    }
+}
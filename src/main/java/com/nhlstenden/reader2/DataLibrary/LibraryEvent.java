@@ -0,0 +1,40 @@
+package com.nhlstenden.reader2.DataLibrary;
+
+import com.nhlstenden.reader2.models.Serie;
+
+/**
+ * Describes a change to the library, published by the LibraryRepository.
+ */
+public class LibraryEvent {
+
+    /**
+     * The kind of change that was made.
+     */
+    public enum Type {
+        SERIE_ADDED,
+        SERIE_UPDATED,
+        SERIE_REMOVED,
+        CHAPTERS_CHANGED
+    }
+
+    private final Type type;
+    private final Serie serie;
+
+    public LibraryEvent(Type type, Serie serie) {
+        this.type = type;
+        this.serie = serie;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Returns the serie that was changed, or whose chapters were changed.
+     *
+     * @return the changed serie, may be null if it is no longer known
+     */
+    public Serie getSerie() {
+        return serie;
+    }
+}
@@ -0,0 +1,351 @@
+package com.nhlstenden.reader2.DataLibrary;
+
+import com.nhlstenden.reader2.ComicParser.FrameStoreCache;
+import com.nhlstenden.reader2.ComicParser.PageCache;
+import com.nhlstenden.reader2.models.Chapter;
+import com.nhlstenden.reader2.models.Serie;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * The LibraryRepository class keeps the series and chapter metadata of the library in memory.
+ *
+ * The library is loaded from the database once, on first use, and indexed by serie id, serie name,
+ * chapter id and the chapters of each serie. Every change is written through to the database with
+ * SerieLibrary and ChapterLibrary and published to the registered listeners as a LibraryEvent.
+ * The serie names are also kept in a TrigramIndex, so the series can be searched by name while typing.
+ * All methods are synchronized, the returned lists are copies that can be used freely.
+ */
+public class LibraryRepository {
+
+    // Singleton instance of LibraryRepository
+    private static LibraryRepository instance;
+
+    private final SerieLibrary serieLibrary = new SerieLibrary();
+    private final ChapterLibrary chapterLibrary = new ChapterLibrary();
+    private final PageLibrary pageLibrary = new PageLibrary();
+
+    // In-memory indexes of the library, seriesById keeps the database order
+    private final Map<Integer, Serie> seriesById = new LinkedHashMap<>();
+    private final Map<String, Serie> seriesByName = new HashMap<>();
+    // The name each serie is indexed under, callers rename the cached Serie objects before updating them
+    private final Map<Integer, String> indexedNames = new HashMap<>();
+    private final Map<Integer, Chapter> chaptersById = new HashMap<>();
+    private final Map<Integer, List<Chapter>> chaptersBySerie = new HashMap<>();
+    private final TrigramIndex nameIndex = new TrigramIndex();
+
+    private final List<Consumer<LibraryEvent>> listeners = new CopyOnWriteArrayList<>();
+
+    private boolean loaded = false;
+
+    private LibraryRepository() {
+    }
+
+    /**
+     * Returns the singleton instance of LibraryRepository.
+     *
+     * @return the singleton instance of LibraryRepository
+     */
+    public static synchronized LibraryRepository getInstance() {
+        if (instance == null) {
+            instance = new LibraryRepository();
+        }
+        return instance;
+    }
+
+    /**
+     * Registers a listener that is notified after every change to the library.
+     * Listeners are called on the thread that made the change.
+     *
+     * @param listener the listener to add
+     */
+    public void addListener(Consumer<LibraryEvent> listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Consumer<LibraryEvent> listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Returns all series of the library, in database order.
+     *
+     * @return a list of all Serie objects
+     */
+    public synchronized List<Serie> getAllSeries() {
+        ensureLoaded();
+        return new ArrayList<>(seriesById.values());
+    }
+
+    /**
+     * Returns a serie by its ID.
+     *
+     * @param id the ID of the serie
+     * @return the Serie object, or null if not found
+     */
+    public synchronized Serie getSerie(int id) {
+        ensureLoaded();
+        return seriesById.get(id);
+    }
+
+    /**
+     * Returns a serie by its name.
+     *
+     * @param name the name of the serie
+     * @return the Serie object, or null if not found
+     */
+    public synchronized Serie getSerieByName(String name) {
+        ensureLoaded();
+        return seriesByName.get(name);
+    }
+
+    /**
+     * Searches the series by name, allowing typos in the query.
+     * Series whose name starts with or contains the query come first, then the series with the most similar names.
+     *
+     * @param query the text entered by the user
+     * @param limit the maximum number of series to return
+     * @return the matching series, best match first
+     */
+    public synchronized List<Serie> searchSeriesByName(String query, int limit) {
+        ensureLoaded();
+        List<Serie> series = new ArrayList<>();
+        for (int id : nameIndex.search(query, limit)) {
+            series.add(seriesById.get(id));
+        }
+        return series;
+    }
+
+    /**
+     * Returns the chapters of a serie, in database order.
+     *
+     * @param serieId the ID of the serie
+     * @return a list of the chapters of the serie
+     */
+    public synchronized List<Chapter> getChapters(int serieId) {
+        ensureLoaded();
+        return new ArrayList<>(chaptersBySerie.getOrDefault(serieId, List.of()));
+    }
+
+    /**
+     * Returns a chapter by its ID.
+     *
+     * @param id the ID of the chapter
+     * @return the Chapter object, or null if not found
+     */
+    public synchronized Chapter getChapter(int id) {
+        ensureLoaded();
+        return chaptersById.get(id);
+    }
+
+    /**
+     * Adds a serie to the database and the repository.
+     * The generated ID is set on the serie.
+     *
+     * @param serie the serie to add
+     * @return the generated ID of the serie, or -1 if the insertion fails
+     */
+    public int addSerie(Serie serie) {
+        synchronized (this) {
+            ensureLoaded();
+            int id = serieLibrary.addSerie(serie);
+            if (id == -1) {
+                return -1;
+            }
+            serie.setId(id);
+            indexSerie(serie);
+        }
+        publish(new LibraryEvent(LibraryEvent.Type.SERIE_ADDED, serie));
+        return serie.getId();
+    }
+
+    /**
+     * Updates a serie in the database and the repository.
+     *
+     * @param serie the serie with the updated details
+     * @return true if the update was successful, false otherwise
+     */
+    public boolean updateSerie(Serie serie) {
+        synchronized (this) {
+            ensureLoaded();
+            if (!serieLibrary.updateSerie(serie)) {
+                return false;
+            }
+
+            // The name may have changed, indexSerie replaces the name index entry
+            indexSerie(serie);
+        }
+        publish(new LibraryEvent(LibraryEvent.Type.SERIE_UPDATED, serie));
+        return true;
+    }
+
+    /**
+     * Deletes a serie and all of its chapters and page tables from the database and the repository.
+     *
+     * @param id the ID of the serie
+     * @return true if the serie was deleted, false otherwise
+     */
+    public boolean deleteSerie(int id) {
+        Serie serie;
+        List<Chapter> chapters;
+        synchronized (this) {
+            ensureLoaded();
+            if (!serieLibrary.deleteSerie(id)) {
+                return false;
+            }
+            pageLibrary.deletePagesBySerie(id);
+            chapterLibrary.deleteChapterBySerie(id);
+
+            serie = seriesById.remove(id);
+            String indexedName = indexedNames.remove(id);
+            if (indexedName != null) {
+                seriesByName.remove(indexedName);
+            }
+            nameIndex.remove(id);
+            chapters = chaptersBySerie.remove(id);
+            if (chapters != null) {
+                for (Chapter chapter : chapters) {
+                    chaptersById.remove(chapter.getId());
+                }
+            }
+        }
+        if (chapters != null) {
+            for (Chapter chapter : chapters) {
+                invalidateCachedPages(chapter.getId());
+            }
+        }
+        publish(new LibraryEvent(LibraryEvent.Type.SERIE_REMOVED, serie));
+        return true;
+    }
+
+    /**
+     * Adds the new chapters of a serie to the database and the repository in one batch.
+     * Chapters whose title already exists in the serie are skipped.
+     *
+     * @param serieId the ID of the serie
+     * @param chapters the chapters to add
+     * @return the generated IDs of the inserted chapters
+     */
+    public int[] addChapters(int serieId, List<Chapter> chapters) {
+        int[] ids;
+        synchronized (this) {
+            ensureLoaded();
+            ids = chapterLibrary.addChapters(serieId, chapters);
+            Set<Integer> insertedIds = new HashSet<>();
+            for (int id : ids) {
+                insertedIds.add(id);
+            }
+            for (Chapter chapter : chapters) {
+                if (insertedIds.contains(chapter.getId())) {
+                    indexChapter(chapter);
+                }
+            }
+        }
+        if (ids.length > 0) {
+            publish(new LibraryEvent(LibraryEvent.Type.CHAPTERS_CHANGED, getSerie(serieId)));
+        }
+        return ids;
+    }
+
+    /**
+     * Deletes a chapter and its page table from the database and the repository.
+     *
+     * @param id the ID of the chapter
+     * @return true if the chapter was deleted, false otherwise
+     */
+    public boolean deleteChapter(int id) {
+        Chapter chapter;
+        synchronized (this) {
+            ensureLoaded();
+            if (!chapterLibrary.deleteChapter(id)) {
+                return false;
+            }
+            pageLibrary.deletePagesByChapter(id);
+            chapter = chaptersById.remove(id);
+            if (chapter != null) {
+                List<Chapter> chapters = chaptersBySerie.get(chapter.getSerieID());
+                if (chapters != null) {
+                    chapters.remove(chapter);
+                }
+            }
+        }
+        invalidateCachedPages(id);
+        if (chapter != null) {
+            publish(new LibraryEvent(LibraryEvent.Type.CHAPTERS_CHANGED, getSerie(chapter.getSerieID())));
+        }
+        return true;
+    }
+
+    /**
+     * Sets the last read timestamp of a chapter to now, in the database and the repository.
+     *
+     * @param id the ID of the chapter
+     * @return true if the update was successful, false otherwise
+     */
+    public synchronized boolean setLastRead(int id) {
+        ensureLoaded();
+        if (!chapterLibrary.setLastRead(id)) {
+            return false;
+        }
+        Chapter chapter = chaptersById.get(id);
+        if (chapter != null) {
+            chapter.setLastRead(LocalDateTime.now());
+        }
+        return true;
+    }
+
+    /**
+     * Loads the series and chapters from the database the first time the repository is used.
+     */
+    private void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+        for (Serie serie : serieLibrary.getAllSeries()) {
+            indexSerie(serie);
+        }
+        for (Chapter chapter : chapterLibrary.getAllChapters()) {
+            indexChapter(chapter);
+        }
+        loaded = true;
+    }
+
+    private void indexSerie(Serie serie) {
+        String indexedName = indexedNames.put(serie.getId(), serie.getName());
+        if (indexedName != null && seriesByName.get(indexedName) == seriesById.get(serie.getId())) {
+            seriesByName.remove(indexedName);
+        }
+        seriesById.put(serie.getId(), serie);
+        seriesByName.put(serie.getName(), serie);
+        nameIndex.add(serie.getId(), serie.getName());
+    }
+
+    private void indexChapter(Chapter chapter) {
+        chaptersById.put(chapter.getId(), chapter);
+        chaptersBySerie.computeIfAbsent(chapter.getSerieID(), key -> new ArrayList<>()).add(chapter);
+    }
+
+    private void publish(LibraryEvent event) {
+        for (Consumer<LibraryEvent> listener : listeners) {
+            listener.accept(event);
+        }
+    }
+
+    /**
+     * Drops the decoded pages and animation frames of a deleted chapter from the memory caches,
+     * so they do not take up the memory budget until they are evicted.
+     */
+    private void invalidateCachedPages(int chapterId) {
+        PageCache.getInstance().invalidateChapter(chapterId);
+        FrameStoreCache.getInstance().invalidateChapter(chapterId);
+    }
+}
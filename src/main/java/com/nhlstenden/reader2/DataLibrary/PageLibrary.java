@@ -0,0 +1,125 @@
+package com.nhlstenden.reader2.DataLibrary;
+
+import com.nhlstenden.reader2.controllers.DatabaseController;
+import com.nhlstenden.reader2.models.Page;
+
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The PageLibrary class stores the page table of every chapter.
+ *
+ * The page table is written when a chapter is imported and lists the page entries of the archive in reading order,
+ * with their sizes, the offset of their local ZIP header and their pixel dimensions. With it the reader can open
+ * a chapter at any page without listing the archive, and knows the aspect ratio of a page before decoding it.
+ */
+public class PageLibrary {
+
+    private final DatabaseController dbController;
+    private final EntityMapper<Page> mapper = EntityMappers.get(Page.class);
+
+    public PageLibrary() {
+        this.dbController = DatabaseController.getInstance();
+    }
+
+    /**
+     * Replaces the page table of a chapter in a single transaction.
+     *
+     * This method deletes the current pages of the chapter and inserts the given pages with a single prepared statement.
+     * If an error occurs, the transaction is rolled back, the stack trace is printed and false is returned.
+     *
+     * @param chapterId the ID of the chapter the pages belong to
+     * @param pages the pages of the chapter, in reading order
+     * @return true if the pages were stored, false otherwise
+     */
+    public boolean replacePages(int chapterId, List<Page> pages) {
+        try (Connection conn = dbController.getWriteConnection()) {
+            boolean autoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+            try (PreparedStatement delete = conn.prepareStatement("DELETE FROM Page WHERE ChapterId = ?");
+                 PreparedStatement insert = conn.prepareStatement(mapper.getInsertSql())) {
+                delete.setInt(1, chapterId);
+                delete.executeUpdate();
+
+                for (Page page : pages) {
+                    page.setChapterId(chapterId);
+                    mapper.bindInsert(insert, page);
+                    insert.addBatch();
+                }
+                insert.executeBatch();
+                conn.commit();
+                return true;
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(autoCommit);
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return false;
+    }
+
+    /**
+     * Retrieves the page table of a chapter from the database.
+     *
+     * This method queries the Page table for all pages of the chapter, ordered by their page index.
+     * If an error occurs, it prints the stack trace and returns an empty list.
+     *
+     * @param chapterId the ID of the chapter
+     * @return the pages of the chapter in reading order, or an empty list if the chapter has no page table
+     */
+    public List<Page> getPagesByChapter(int chapterId) {
+        List<Page> pages = new ArrayList<>();
+        String sql = mapper.getSelectSql() + " WHERE ChapterId = ? ORDER BY PageIndex";
+        try (Connection conn = dbController.getReadConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setInt(1, chapterId);
+            ResultSet rs = pstmt.executeQuery();
+            while (rs.next()) {
+                pages.add(mapper.map(rs));
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return pages;
+    }
+
+    /**
+     * Deletes the page table of a chapter from the database.
+     *
+     * @param chapterId the ID of the chapter
+     * @return true if any pages were deleted, false otherwise
+     */
+    public boolean deletePagesByChapter(int chapterId) {
+        String sql = "DELETE FROM Page WHERE ChapterId = ?";
+        try (Connection conn = dbController.getWriteConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setInt(1, chapterId);
+            return pstmt.executeUpdate() > 0;
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return false;
+    }
+
+    /**
+     * Deletes the page tables of all chapters of a series from the database.
+     *
+     * @param serieId the ID of the series
+     * @return true if any pages were deleted, false otherwise
+     */
+    public boolean deletePagesBySerie(int serieId) {
+        String sql = "DELETE FROM Page WHERE ChapterId IN (SELECT Id FROM Chapter WHERE SerieId = ?)";
+        try (Connection conn = dbController.getWriteConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setInt(1, serieId);
+            return pstmt.executeUpdate() > 0;
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return false;
+    }
+}
@@ -0,0 +1,122 @@
+package com.nhlstenden.reader2.DataLibrary;
+
+import com.nhlstenden.reader2.controllers.DatabaseController;
+
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The SearchLibrary class searches the series of the library through the SerieSearch FTS5 table.
+ *
+ * The table holds the name, description, tags, authors and notes of every serie and is kept in sync by triggers,
+ * see DatabaseController. Every word of the query is matched as a prefix, all words have to match, and the hits
+ * are ranked with BM25 with a match in the name counting most.
+ */
+public class SearchLibrary {
+
+    // BM25 weights of the Name, Description, Tags, Authors and Notes columns
+    private static final String RANK = "bm25(SerieSearch, 10.0, 2.0, 5.0, 5.0, 1.0)";
+
+    private final DatabaseController dbController;
+
+    /**
+     * A serie that matches a search query.
+     *
+     * @param serieId the ID of the serie
+     * @param name the name of the serie
+     * @param rank the BM25 rank of the hit, lower is better
+     */
+    public record Hit(int serieId, String name, double rank) {
+    }
+
+    public SearchLibrary() {
+        this.dbController = DatabaseController.getInstance();
+    }
+
+    /**
+     * Searches the series for the given query.
+     *
+     * This method matches every word of the query as a prefix in the name, description, tags, authors and notes of
+     * the series, and returns one page of the hits, best hit first.
+     * If the query has no words or an error occurs, an empty list is returned.
+     *
+     * @param query the text entered by the user
+     * @param offset the number of hits to skip
+     * @param limit the maximum number of hits to return
+     * @return the hits, ordered by rank
+     */
+    public List<Hit> search(String query, int offset, int limit) {
+        List<Hit> hits = new ArrayList<>();
+        String match = toMatchExpression(query);
+        if (match == null || limit <= 0) {
+            return hits;
+        }
+
+        String sql = "SELECT rowid, Name, " + RANK + " AS Rank FROM SerieSearch WHERE SerieSearch MATCH ? "
+                + "ORDER BY Rank LIMIT ? OFFSET ?";
+        try (Connection conn = dbController.getReadConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, match);
+            pstmt.setInt(2, limit);
+            pstmt.setInt(3, Math.max(0, offset));
+            ResultSet rs = pstmt.executeQuery();
+            while (rs.next()) {
+                hits.add(new Hit(rs.getInt(1), rs.getString(2), rs.getDouble(3)));
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return hits;
+    }
+
+    /**
+     * Counts the series that match the given query, for paging through the hits.
+     *
+     * @param query the text entered by the user
+     * @return the number of matching series
+     */
+    public int count(String query) {
+        String match = toMatchExpression(query);
+        if (match == null) {
+            return 0;
+        }
+
+        try (Connection conn = dbController.getReadConnection();
+             PreparedStatement pstmt = conn.prepareStatement("SELECT count(*) FROM SerieSearch WHERE SerieSearch MATCH ?")) {
+            pstmt.setString(1, match);
+            ResultSet rs = pstmt.executeQuery();
+            if (rs.next()) {
+                return rs.getInt(1);
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return 0;
+    }
+
+    /**
+     * Turns the text entered by the user into an FTS5 query that matches every word as a prefix.
+     * Every word is quoted, so characters with a meaning in the FTS5 query syntax are searched for literally.
+     *
+     * @param query the text entered by the user
+     * @return the FTS5 query, or null if the text has no words
+     */
+    static String toMatchExpression(String query) {
+        if (query == null) {
+            return null;
+        }
+
+        StringBuilder match = new StringBuilder();
+        for (String word : query.trim().split("[^\\p{L}\\p{N}]+")) {
+            if (word.isEmpty()) {
+                continue;
+            }
+            if (match.length() > 0) {
+                match.append(' ');
+            }
+            match.append('"').append(word).append("\"*");
+        }
+        return match.length() > 0 ? match.toString() : null;
+    }
+}
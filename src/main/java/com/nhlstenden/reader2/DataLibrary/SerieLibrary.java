@@ -10,6 +10,7 @@ import java.util.List;
 public class SerieLibrary {
 
     private final DatabaseController dbController;
+    private final EntityMapper<Serie> mapper = EntityMappers.get(Serie.class);
 
     public SerieLibrary() {
         this.dbController = DatabaseController.getInstance();
@@ -27,16 +28,9 @@ public class SerieLibrary {
      * @return the generated ID of the new series, or -1 if the insertion fails
      */
     public int addSerie(Serie serie) {
-        String sql = "INSERT INTO Serie (Name, Description, Completed, Favorite, CurrentChapter, Read, Gerne) VALUES (?, ?, ?, ?, ?, ?, ?)";
-        try (Connection conn = dbController.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
-            pstmt.setString(1, serie.getName());
-            pstmt.setString(2, serie.getDescription());
-            pstmt.setBoolean(3, serie.isCompleted());
-            pstmt.setBoolean(4, serie.isFavorite());
-            pstmt.setInt(5, serie.getCurrentChapter());
-            pstmt.setBoolean(6, serie.isRead());
-            pstmt.setString(7, serie.getGerne());
+        try (Connection conn = dbController.getWriteConnection();
+             PreparedStatement pstmt = conn.prepareStatement(mapper.getInsertSql(), Statement.RETURN_GENERATED_KEYS)) {
+            mapper.bindInsert(pstmt, serie);
             pstmt.executeUpdate();
             ResultSet rs = pstmt.getGeneratedKeys();
             if (rs.next()) {
@@ -59,27 +53,13 @@ public class SerieLibrary {
      * @return the Serie object if found, or null if not found
      */
     public Serie getSerie(int id) {
-        String sql = "SELECT * FROM Serie WHERE ID = ?";
-        try (Connection conn = dbController.getConnection();
+        String sql = mapper.getSelectSql() + " WHERE Id = ?";
+        try (Connection conn = dbController.getReadConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
             pstmt.setInt(1, id);
             ResultSet rs = pstmt.executeQuery();
             if (rs.next()) {
-
-                Serie temp = new Serie(
-                        rs.getString("Name"),
-                        rs.getString("Description"),
-                        rs.getBoolean("Completed"),
-                        rs.getBoolean("Favorite"),
-                        rs.getInt("CurrentChapter"),
-                        rs.getBoolean("Read"),
-                        rs.getString("Gerne")
-                );
-
-                temp.setId(rs.getInt("Id"));
-
-                return temp;
-
+                return mapper.map(rs);
             }
         } catch (SQLException e) {
             e.printStackTrace();
@@ -99,28 +79,14 @@ public class SerieLibrary {
      */
     public Serie getSerieByName(String name) {
 
-        this.dbController.openConnection();
-
-        String sql = "SELECT * FROM Serie WHERE Name = ?";
-        try (Connection conn = dbController.getConnection();
+        String sql = mapper.getSelectSql() + " WHERE Name = ?";
+        try (Connection conn = dbController.getReadConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
             pstmt.setString(1, name);
             ResultSet rs = pstmt.executeQuery();
             if (rs.next()) {
 
-                Serie temp = new Serie(
-                        rs.getString("Name"),
-                        rs.getString("Description"),
-                        rs.getBoolean("Completed"),
-                        rs.getBoolean("Favorite"),
-                        rs.getInt("CurrentChapter"),
-                        rs.getBoolean("Read"),
-                        rs.getString("Gerne")
-                );
-
-                temp.setId(rs.getInt("Id"));
-
-                return temp;
+                return mapper.map(rs);
             }
         } catch (SQLException e) {
             e.printStackTrace();
@@ -139,36 +105,13 @@ public class SerieLibrary {
      */
     public List<Serie> getAllSeries() {
 
-        this.dbController.openConnection();
-
         List<Serie> series = new ArrayList<>();
-        String sql = "SELECT * FROM Serie";
-        Connection conn = dbController.getConnection();
-        try {
-            if (conn == null || conn.isClosed()) {
-                System.err.println("Database connection is closed or not initialized.");
-                return series;
-            }
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
-        try (PreparedStatement pstmt = conn.prepareStatement(sql);
+        String sql = mapper.getSelectSql();
+        try (Connection conn = dbController.getReadConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql);
              ResultSet rs = pstmt.executeQuery()) {
             while (rs.next()) {
-
-                Serie temp = new Serie(
-                        rs.getString("Name"),
-                        rs.getString("Description"),
-                        rs.getBoolean("Completed"),
-                        rs.getBoolean("Favorite"),
-                        rs.getInt("CurrentChapter"),
-                        rs.getBoolean("Read"),
-                        rs.getString("Gerne")
-                );
-                temp.setId(rs.getInt("Id"));
-
-                series.add(temp);
-
+                series.add(mapper.map(rs));
             }
         } catch (SQLException e) {
             e.printStackTrace();
@@ -188,17 +131,9 @@ public class SerieLibrary {
      * @return true if the update was successful, false otherwise
      */
     public boolean updateSerie(Serie serie) {
-        String sql = "UPDATE Serie SET Name = ?, Description = ?, Completed = ?, Favorite = ?, CurrentChapter = ?, Read = ?, Gerne = ? WHERE Id = ?";
-        try (Connection conn = dbController.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setString(1, serie.getName());
-            pstmt.setString(2, serie.getDescription());
-            pstmt.setBoolean(3, serie.isCompleted());
-            pstmt.setBoolean(4, serie.isFavorite());
-            pstmt.setInt(5, serie.getCurrentChapter());
-            pstmt.setBoolean(6, serie.isRead());
-            pstmt.setString(7, serie.getGerne());
-            pstmt.setInt(8, serie.getId());
+        try (Connection conn = dbController.getWriteConnection();
+             PreparedStatement pstmt = conn.prepareStatement(mapper.getUpdateSql())) {
+            mapper.bindUpdate(pstmt, serie);
             return pstmt.executeUpdate() > 0;
         } catch (SQLException e) {
             e.printStackTrace();
@@ -218,10 +153,8 @@ public class SerieLibrary {
      */
     public boolean deleteSerie(int id) {
 
-        this.dbController.openConnection();
-
         String sql = "DELETE FROM Serie WHERE ID = ?";
-        try (Connection conn = dbController.getConnection();
+        try (Connection conn = dbController.getWriteConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
             pstmt.setInt(1, id);
             return pstmt.executeUpdate() > 0;
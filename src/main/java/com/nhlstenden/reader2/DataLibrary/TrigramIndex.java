@@ -0,0 +1,265 @@
+package com.nhlstenden.reader2.DataLibrary;
+
+import java.text.Normalizer;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * The TrigramIndex class finds names that look like a query, even with typos, without scanning every name.
+ *
+ * Every name is split into the overlapping three character sequences (trigrams) of its normalized form, and every
+ * trigram has a posting list of the names containing it. A query is scored by counting, per name, how many of the
+ * query's trigrams it shares, so only the names in the posting lists of the query are looked at. The similarity
+ * is the share of trigrams the query and the name have in common, a name that starts with or contains the query
+ * ranks above names that only look alike.
+ *
+ * Names are kept in slots. The posting lists and the per slot data are primitive int arrays, a removed name frees
+ * its slot for the next added name, so adding and removing a name only touches the posting lists of its trigrams.
+ * The index is not thread-safe, LibraryRepository guards it with its own lock.
+ */
+public class TrigramIndex {
+
+    // Share of the query trigrams a name must have to be a hit, low enough to allow a typo in a short word
+    private static final double MIN_SHARED = 0.4;
+
+    // Posting list of every trigram, packed into a long
+    private final Map<Long, Posting> postings = new HashMap<>();
+
+    // Per slot: the id of the name (-1 for a free slot), its trigram count and its normalized form
+    private int[] ids = new int[64];
+    private int[] gramCounts = new int[64];
+    private String[] normalizedNames = new String[64];
+    private int slotCount = 0;
+
+    // Free slots, reused before new ones are taken
+    private int[] freeSlots = new int[16];
+    private int freeCount = 0;
+
+    // Slot of every id
+    private final Map<Integer, Integer> slotsById = new HashMap<>();
+
+    // Shared trigram counts per slot for a query, reset after every query
+    private int[] scores = new int[64];
+
+    /**
+     * Adds a name to the index, replacing the name that was indexed for the same id.
+     *
+     * @param id the id the name belongs to, for example the serie id.
+     * @param name the name.
+     */
+    public void add(int id, String name) {
+        remove(id);
+
+        String normalized = normalize(name);
+        long[] grams = nameTrigrams(normalized);
+
+        int slot = freeCount > 0 ? freeSlots[--freeCount] : slotCount++;
+        ensureSlotCapacity(slotCount);
+        ids[slot] = id;
+        gramCounts[slot] = grams.length;
+        normalizedNames[slot] = normalized;
+        slotsById.put(id, slot);
+
+        for (long gram : grams) {
+            postings.computeIfAbsent(gram, key -> new Posting()).add(slot);
+        }
+    }
+
+    /**
+     * Removes the name of an id from the index.
+     *
+     * @param id the id the name belongs to.
+     */
+    public void remove(int id) {
+        Integer slot = slotsById.remove(id);
+        if (slot == null) {
+            return;
+        }
+
+        for (long gram : nameTrigrams(normalizedNames[slot])) {
+            Posting posting = postings.get(gram);
+            if (posting != null && posting.remove(slot) && posting.size == 0) {
+                postings.remove(gram);
+            }
+        }
+
+        ids[slot] = -1;
+        normalizedNames[slot] = null;
+        if (freeCount == freeSlots.length) {
+            freeSlots = Arrays.copyOf(freeSlots, freeCount * 2);
+        }
+        freeSlots[freeCount++] = slot;
+    }
+
+    /**
+     * Returns the number of names in the index.
+     *
+     * @return the number of names.
+     */
+    public int size() {
+        return slotsById.size();
+    }
+
+    /**
+     * Finds the names that look most like the query.
+     *
+     * @param query the text entered by the user.
+     * @param limit the maximum number of hits.
+     * @return the ids of the hits, best hit first.
+     */
+    public int[] search(String query, int limit) {
+        String normalizedQuery = normalize(query);
+        long[] queryGrams = queryTrigrams(normalizedQuery);
+        if (queryGrams.length == 0 || limit <= 0) {
+            return new int[0];
+        }
+
+        // Count the shared trigrams of every name that has at least one, remembering which slots were touched
+        int[] touched = new int[16];
+        int touchedCount = 0;
+        for (long gram : queryGrams) {
+            Posting posting = postings.get(gram);
+            if (posting == null) {
+                continue;
+            }
+            for (int i = 0; i < posting.size; i++) {
+                int slot = posting.slots[i];
+                if (scores[slot]++ == 0) {
+                    if (touchedCount == touched.length) {
+                        touched = Arrays.copyOf(touched, touchedCount * 2);
+                    }
+                    touched[touchedCount++] = slot;
+                }
+            }
+        }
+
+        // Score the names with enough shared trigrams and reset the counts for the next query
+        int minShared = Math.max(1, (int) Math.ceil(queryGrams.length * MIN_SHARED));
+        int[] hitSlots = new int[touchedCount];
+        double[] hitScores = new double[touchedCount];
+        int hitCount = 0;
+        for (int i = 0; i < touchedCount; i++) {
+            int slot = touched[i];
+            int shared = scores[slot];
+            scores[slot] = 0;
+            if (shared < minShared) {
+                continue;
+            }
+
+            double similarity = (double) shared / (queryGrams.length + gramCounts[slot] - shared);
+            String name = normalizedNames[slot];
+            if (name.startsWith(normalizedQuery)) {
+                similarity += 2;
+            } else if (name.contains(normalizedQuery)) {
+                similarity += 1;
+            }
+            hitSlots[hitCount] = slot;
+            hitScores[hitCount] = similarity;
+            hitCount++;
+        }
+
+        // Keep the best hits in a heap with the worst of them on top, so only the kept hits are ordered
+        Comparator<Integer> byRank = (a, b) -> {
+            int byScore = Double.compare(hitScores[b], hitScores[a]);
+            return byScore != 0 ? byScore : normalizedNames[hitSlots[a]].compareTo(normalizedNames[hitSlots[b]]);
+        };
+        PriorityQueue<Integer> best = new PriorityQueue<>(Math.min(limit, hitCount) + 1, byRank.reversed());
+        for (int i = 0; i < hitCount; i++) {
+            best.add(i);
+            if (best.size() > limit) {
+                best.poll();
+            }
+        }
+
+        int[] result = new int[best.size()];
+        for (int i = result.length - 1; i >= 0; i--) {
+            result[i] = ids[hitSlots[best.poll()]];
+        }
+        return result;
+    }
+
+    /**
+     * Lower cases the text, removes accents and replaces every run of other characters than letters and digits
+     * by a single space.
+     */
+    static String normalize(String text) {
+        if (text == null) {
+            return "";
+        }
+        String decomposed = Normalizer.normalize(text.toLowerCase(), Normalizer.Form.NFD);
+        return decomposed.replaceAll("\\p{M}+", "").replaceAll("[^\\p{L}\\p{N}]+", " ").trim();
+    }
+
+    /**
+     * Returns the trigrams of a normalized name. The name is padded with two spaces in front, so its first one
+     * and two letters form trigrams too, and one space at the end.
+     */
+    static long[] nameTrigrams(String normalized) {
+        return normalized.isEmpty() ? new long[0] : trigrams("  " + normalized + " ");
+    }
+
+    /**
+     * Returns the trigrams of a normalized query. The query is not padded at the end, while typing its last word
+     * is usually not complete yet, so a query of a single letter matches the names starting with it.
+     */
+    static long[] queryTrigrams(String normalized) {
+        return normalized.isEmpty() ? new long[0] : trigrams("  " + normalized);
+    }
+
+    /**
+     * Returns the distinct trigrams of a padded text, every trigram packed into a long of three 16-bit chars.
+     */
+    private static long[] trigrams(String padded) {
+        int count = padded.length() - 2;
+        long[] grams = new long[Math.max(0, count)];
+        for (int i = 0; i < count; i++) {
+            grams[i] = ((long) padded.charAt(i) << 32) | ((long) padded.charAt(i + 1) << 16) | padded.charAt(i + 2);
+        }
+        return Arrays.stream(grams).distinct().toArray();
+    }
+
+    private void ensureSlotCapacity(int capacity) {
+        if (capacity <= ids.length) {
+            return;
+        }
+        int newLength = Math.max(capacity, ids.length * 2);
+        ids = Arrays.copyOf(ids, newLength);
+        gramCounts = Arrays.copyOf(gramCounts, newLength);
+        normalizedNames = Arrays.copyOf(normalizedNames, newLength);
+        scores = Arrays.copyOf(scores, newLength);
+    }
+
+    /**
+     * The slots of the names containing a trigram, in no particular order.
+     */
+    private static final class Posting {
+
+        private int[] slots = new int[4];
+        private int size = 0;
+
+        void add(int slot) {
+            if (size == slots.length) {
+                slots = Arrays.copyOf(slots, size * 2);
+            }
+            slots[size++] = slot;
+        }
+
+        /**
+         * Removes a slot by moving the last slot in its place.
+         *
+         * @return true if the slot was in the list.
+         */
+        boolean remove(int slot) {
+            for (int i = 0; i < size; i++) {
+                if (slots[i] == slot) {
+                    slots[i] = slots[--size];
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
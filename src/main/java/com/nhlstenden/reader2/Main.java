@@ -20,7 +20,7 @@ public class Main extends Application {
 
         // Test the database connection
         DatabaseController dbController = DatabaseController.getInstance();
-        if (dbController.executeQuery("SELECT 1") != null) {
+        if (dbController.isConnected()) {
             System.out.println("Database connection successful.");
         } else {
             System.err.println("Database connection failed.");
@@ -47,6 +47,8 @@ public class Main extends Application {
         stage.setResizable(false);
 
         stage.setOnCloseRequest(event -> {
+            // Close the library database, this checkpoints the WAL journal
+            DatabaseController.getInstance().close();
             Platform.exit();
             System.exit(200);
         });
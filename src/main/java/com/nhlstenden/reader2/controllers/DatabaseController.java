@@ -1,87 +1,330 @@
 package com.nhlstenden.reader2.controllers;
 
-import com.nhlstenden.reader2.annotations.Exclude;
+import com.nhlstenden.reader2.DataLibrary.EntityMapper;
+import com.nhlstenden.reader2.DataLibrary.EntityMappers;
+
+import org.sqlite.SQLiteConfig;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.sql.*;
 import java.net.URL;
 import java.nio.file.Paths;
-import java.io.File;
-import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
- * The DatabaseController class manages a single database connection using the singleton pattern.
+ * The DatabaseController class manages the connections to the library database using the singleton pattern.
  * This ensures that only one instance of the DatabaseController exists throughout the application,
- * providing a global point of access to the database connection.
+ * providing a global point of access to the database.
+ *
+ * The database is opened in WAL mode, so reads never wait on a write. Reads lease one of a small pool of read-only
+ * connections, so the library can be browsed and searched from several threads at once. All writes lease the single
+ * writer connection, which is held by one thread at a time, so imports, page tables and reading progress are
+ * written one after the other. A lease is a Connection that must be closed, preferably with try-with-resources,
+ * closing it returns the connection instead of closing it. A thread that holds the writer gets the writer for its
+ * reads too, so it sees its own uncommitted changes.
+ *
+ * The schema of the library database is versioned with SQLite's user_version. When the connection is opened,
+ * every migration newer than the version of the database is applied in order, each in its own transaction,
+ * so databases seeded by any earlier version of the application are upgraded in place.
  */
 public class DatabaseController {
 
+    // Name of the application data directory
+    private static final String APPLICATION_NAME = "Reader2";
+    // File name of the library database in the data directory
+    private static final String DATABASE_FILE = "library.db";
+
+    // Number of read-only connections, can be set with -Dreader.db.readers
+    private static final int READ_POOL_SIZE = Math.max(1, Integer.getInteger("reader.db.readers",
+            Math.min(4, Runtime.getRuntime().availableProcessors())));
+    // Time to wait for a free read connection before giving up
+    private static final long LEASE_TIMEOUT_SECONDS = 30;
+    // Time SQLite waits for a lock held by another connection, for example during a checkpoint
+    private static final int BUSY_TIMEOUT_MS = 5000;
+
     // Singleton instance of DatabaseController
     private static DatabaseController instance;
-    // Database connection object
+
+    // The writer connection, used by one thread at a time
     private Connection connection;
+    private final ReentrantLock writeLock = new ReentrantLock();
+
+    // Idle read-only connections, more are opened on demand up to READ_POOL_SIZE
+    private final BlockingQueue<Connection> idleReaders = new ArrayBlockingQueue<>(READ_POOL_SIZE);
+    private int openReaders = 0;
+    private String dbUrl;
+    private volatile boolean open = false;
+
+    /**
+     * A schema change, applied once to every library database.
+     */
+    @FunctionalInterface
+    private interface Migration {
+        void apply(Statement statement) throws SQLException;
+    }
+
+    // The schema migrations, the database is at version N after the first N migrations. Only ever append to this list.
+    private static final List<Migration> MIGRATIONS = List.of(
+            // 1: Drop the tables left behind by table rebuilds in the bundled database
+            DatabaseController::dropLeftoverTables,
+
+            // 2: Index the lookups of series and chapters and the last read ordering
+            statement -> {
+                statement.execute("CREATE INDEX IF NOT EXISTS idx_Chapter_SerieId_Title ON Chapter (SerieId, Title)");
+                statement.execute("CREATE INDEX IF NOT EXISTS idx_Chapter_Title ON Chapter (Title)");
+                statement.execute("CREATE INDEX IF NOT EXISTS idx_Chapter_SerieId_LastRead ON Chapter (SerieId, LastRead)");
+                statement.execute("CREATE INDEX IF NOT EXISTS idx_Serie_Name ON Serie (Name)");
+            },
+
+            // 3: The page table of every chapter, see PageLibrary
+            statement -> {
+                statement.execute("CREATE TABLE IF NOT EXISTS Page ("
+                        + "Id INTEGER PRIMARY KEY AUTOINCREMENT, "
+                        + "ChapterId INTEGER NOT NULL, "
+                        + "EntryName TEXT NOT NULL, "
+                        + "PageIndex INTEGER NOT NULL, "
+                        + "CompressedSize INTEGER, "
+                        + "UncompressedSize INTEGER, "
+                        + "HeaderOffset INTEGER, "
+                        + "Width INTEGER, "
+                        + "Height INTEGER)");
+                statement.execute("CREATE UNIQUE INDEX IF NOT EXISTS idx_Page_ChapterId_PageIndex ON Page (ChapterId, PageIndex)");
+            },
+
+            // 4: Full-text search over the series and their tags, authors and notes, see SearchLibrary
+            DatabaseController::createSearchIndex
+    );
 
     /**
      * Private constructor to prevent direct instantiation.
-     * Establishes a connection to the SQLite database located in the resources folder.
+     * Establishes the connection to the library database in the user data directory.
      */
     private DatabaseController() {
         openConnection();
     }
 
     /**
-     * Opens a connection to the SQLite database located in the 'resources' folder.
-     * If the database file is not found, an error message is printed to the console.
-     * If an SQLException or URISyntaxException occurs, the stack trace is printed.
+     * Opens the writer connection to the library database, if it is not open already.
+     *
+     * The library database lives in the user data directory and is seeded once from the bundled
+     * 'database/sqlite.db' resource. The writer connection is opened first, with WAL journaling and pragmas tuned
+     * for a read-heavy library, and migrates the schema. The read connections are opened later, when needed.
+     * If an SQLException occurs, the stack trace is printed.
      */
-    public void openConnection() {
+    public synchronized void openConnection() {
         try {
+            if (this.connection != null && !this.connection.isClosed()) {
+                return;
+            }
 
-            // TODO - all file retrieving and loading has to be converted to the folowing way
-
-            // instructions to build maven .jar - shadow executable
-            // mvn clean package shade:shade
-            // mvn clean package
-            // mvn install
+            // Seed the library database from the bundled resource on first start
+            Path dbFile = getDataDirectory().resolve(DATABASE_FILE);
+            if (Files.notExists(dbFile)) {
+                URL resourceUrl = getClass().getResource("/com/nhlstenden/reader2/database/sqlite.db");
+                if (resourceUrl == null) {
+                    System.err.println("Database file not found in resources folder.");
+                    return;
+                }
+                seedDatabase(resourceUrl, dbFile);
+            }
 
-            URL resourceUrl = getClass().getResource("/com/nhlstenden/reader2/database/sqlite.db");
+            this.dbUrl = "jdbc:sqlite:" + dbFile.toAbsolutePath();
+            this.connection = DriverManager.getConnection(dbUrl);
 
-            Path tempFile = null;
-            try {
-                tempFile = copyToTempFile(resourceUrl, ".db");
-            } catch (IOException e) {
-                throw new RuntimeException(e);
+            // Tune the connection for a read-heavy library, WAL lets the read connections read while it writes
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("PRAGMA journal_mode = WAL");
+                statement.execute("PRAGMA synchronous = NORMAL");
+                statement.execute("PRAGMA busy_timeout = " + BUSY_TIMEOUT_MS);
+                tune(statement);
             }
 
-            if (resourceUrl != null && tempFile != null) {
-                File dbFile = Paths.get(resourceUrl.toURI()).toFile();
-//                File dbFile = Paths.get(tempFile.toUri()).toFile();
-                String dbUrl = "jdbc:sqlite:" + dbFile.getAbsolutePath();
-                this.connection = DriverManager.getConnection(dbUrl);
-            } else {
-                System.err.println("Database file not found in resources folder.");
-            }
+            // Bring the schema up to date before anything uses it
+            migrate();
+            open = true;
         } catch (SQLException e) {
             e.printStackTrace();
-        } catch (Exception e) {
+        } catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
 
-    // Note: 'Path' is 'java.nio.file.Path', not 'javafx.scene.shape.Path'
-    public static Path copyToTempFile(URL url, String suffix) throws IOException {
-        // 'suffix' will default to ".tmp" if null
-        Path tempFile = Files.createTempFile(null, suffix);
-        try (InputStream in = url.openStream();
+    /**
+     * Applies the migrations the database does not have yet.
+     *
+     * Every migration runs in its own transaction together with raising the user_version, so a failed migration
+     * leaves the database at the last version that was applied completely. The remaining migrations are then
+     * skipped and tried again the next time the connection is opened.
+     *
+     * @throws SQLException if the version of the database can not be read
+     */
+    private void migrate() throws SQLException {
+        int version;
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("PRAGMA user_version")) {
+            version = rs.next() ? rs.getInt(1) : 0;
+        }
+
+        boolean autoCommit = connection.getAutoCommit();
+        try {
+            connection.setAutoCommit(false);
+            for (int i = version; i < MIGRATIONS.size(); i++) {
+                try (Statement statement = connection.createStatement()) {
+                    MIGRATIONS.get(i).apply(statement);
+                    // PRAGMA does not take parameters, the version is always a number
+                    statement.execute("PRAGMA user_version = " + (i + 1));
+                    connection.commit();
+                } catch (SQLException e) {
+                    connection.rollback();
+                    System.err.println("Failed to migrate the library database to version " + (i + 1));
+                    e.printStackTrace();
+                    return;
+                }
+            }
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+    }
+
+    /**
+     * Creates the SerieSearch FTS5 table with one row per serie, and the triggers that keep it in sync.
+     *
+     * A row holds the name and description of the serie, the names of its tags, the authors of its chapters and
+     * the notes on its chapters. Whenever one of those changes, the rows of the affected series are rebuilt
+     * from the source tables by a trigger, so the search index can never drift from the library.
+     */
+    private static void createSearchIndex(Statement statement) throws SQLException {
+        statement.execute("CREATE VIRTUAL TABLE IF NOT EXISTS SerieSearch USING fts5("
+                + "Name, Description, Tags, Authors, Notes, "
+                + "tokenize = 'unicode61 remove_diacritics 2', prefix = '2 3')");
+
+        // Indexes for the lookups done by the triggers
+        statement.execute("CREATE INDEX IF NOT EXISTS idx_SerieTag_SerieId ON SerieTag (SerieId)");
+        statement.execute("CREATE INDEX IF NOT EXISTS idx_SerieTag_TagId ON SerieTag (TagId)");
+        statement.execute("CREATE INDEX IF NOT EXISTS idx_Chapter_AuthorId ON Chapter (AuthorId)");
+        statement.execute("CREATE INDEX IF NOT EXISTS idx_Note_ChapterId ON Note (ChapterId)");
+
+        // Rebuild the rows of the series changed by the triggering statement. The models are always updated as a whole,
+        // so update triggers only fire when a searched column actually changed, not on every reading progress update
+        String[][] triggers = {
+                {"Serie_ai", "AFTER INSERT ON Serie", "NEW.Id"},
+                {"Serie_au", "AFTER UPDATE OF Name, Description ON Serie WHEN OLD.Name IS NOT NEW.Name OR OLD.Description IS NOT NEW.Description", "NEW.Id"},
+                {"SerieTag_ai", "AFTER INSERT ON SerieTag", "NEW.SerieId"},
+                {"SerieTag_au", "AFTER UPDATE ON SerieTag", "OLD.SerieId, NEW.SerieId"},
+                {"SerieTag_ad", "AFTER DELETE ON SerieTag", "OLD.SerieId"},
+                {"Tag_au", "AFTER UPDATE OF Name ON Tag", "SELECT SerieId FROM SerieTag WHERE TagId = NEW.Id"},
+                {"Tag_ad", "AFTER DELETE ON Tag", "SELECT SerieId FROM SerieTag WHERE TagId = OLD.Id"},
+                {"Author_au", "AFTER UPDATE OF FullName ON Author", "SELECT SerieId FROM Chapter WHERE AuthorId = NEW.Id"},
+                {"Author_ad", "AFTER DELETE ON Author", "SELECT SerieId FROM Chapter WHERE AuthorId = OLD.Id"},
+                {"Chapter_ai", "AFTER INSERT ON Chapter WHEN NEW.AuthorId IS NOT NULL", "NEW.SerieId"},
+                {"Chapter_au", "AFTER UPDATE OF SerieId, AuthorId ON Chapter WHEN OLD.SerieId IS NOT NEW.SerieId OR OLD.AuthorId IS NOT NEW.AuthorId", "OLD.SerieId, NEW.SerieId"},
+                {"Chapter_ad", "AFTER DELETE ON Chapter", "OLD.SerieId"},
+                {"Note_ai", "AFTER INSERT ON Note", "SELECT SerieId FROM Chapter WHERE Id = NEW.ChapterId"},
+                {"Note_au", "AFTER UPDATE ON Note", "SELECT SerieId FROM Chapter WHERE Id IN (OLD.ChapterId, NEW.ChapterId)"},
+                {"Note_ad", "AFTER DELETE ON Note", "SELECT SerieId FROM Chapter WHERE Id = OLD.ChapterId"}
+        };
+        for (String[] trigger : triggers) {
+            statement.execute("CREATE TRIGGER IF NOT EXISTS SerieSearch_" + trigger[0] + " " + trigger[1] + " BEGIN "
+                    + rebuildSearchRows(trigger[2]) + " END");
+        }
+        statement.execute("CREATE TRIGGER IF NOT EXISTS SerieSearch_Serie_ad AFTER DELETE ON Serie BEGIN "
+                + "DELETE FROM SerieSearch WHERE rowid = OLD.Id; END");
+
+        // Index the series that are already in the library
+        statement.execute("DELETE FROM SerieSearch");
+        statement.execute(rebuildSearchRows("SELECT Id FROM Serie"));
+    }
+
+    /**
+     * Returns the statements that rebuild the SerieSearch rows of the given series, ending with a semicolon.
+     *
+     * @param serieIds a list of serie ids or a SELECT statement returning them
+     */
+    private static String rebuildSearchRows(String serieIds) {
+        return "DELETE FROM SerieSearch WHERE rowid IN (" + serieIds + "); "
+                + "INSERT INTO SerieSearch (rowid, Name, Description, Tags, Authors, Notes) "
+                + "SELECT s.Id, s.Name, s.Description, "
+                + "(SELECT group_concat(t.Name, ' ') FROM SerieTag st JOIN Tag t ON t.Id = st.TagId WHERE st.SerieId = s.Id), "
+                + "(SELECT group_concat(DISTINCT a.FullName) FROM Chapter c JOIN Author a ON a.Id = c.AuthorId WHERE c.SerieId = s.Id), "
+                + "(SELECT group_concat(n.NoteText, ' ') FROM Note n JOIN Chapter c ON c.Id = n.ChapterId WHERE c.SerieId = s.Id) "
+                + "FROM Serie s WHERE s.Id IN (" + serieIds + ");";
+    }
+
+    /**
+     * Drops the "*_dg_tmp" tables that rebuilding a table in a database tool leaves behind.
+     */
+    private static void dropLeftoverTables(Statement statement) throws SQLException {
+        List<String> tables = new ArrayList<>();
+        try (ResultSet rs = statement.executeQuery("SELECT name FROM sqlite_master WHERE type = 'table' AND name LIKE '%\\_dg\\_tmp' ESCAPE '\\'")) {
+            while (rs.next()) {
+                tables.add(rs.getString(1));
+            }
+        }
+        for (String table : tables) {
+            statement.execute("DROP TABLE IF EXISTS \"" + table.replace("\"", "\"\"") + "\"");
+        }
+    }
+
+    /**
+     * Returns the per-user data directory of the application, creating it if needed.
+     * The location can be overridden with the "reader.data.dir" system property.
+     *
+     * @return the path of the data directory
+     * @throws IOException if the directory can not be created
+     */
+    public static Path getDataDirectory() throws IOException {
+        String override = System.getProperty("reader.data.dir");
+        Path directory;
+
+        if (override != null) {
+            directory = Paths.get(override);
+        } else {
+            String os = System.getProperty("os.name", "").toLowerCase();
+            String home = System.getProperty("user.home");
+
+            if (os.contains("win") && System.getenv("APPDATA") != null) {
+                directory = Paths.get(System.getenv("APPDATA"), APPLICATION_NAME);
+            } else if (os.contains("mac")) {
+                directory = Paths.get(home, "Library", "Application Support", APPLICATION_NAME);
+            } else if (System.getenv("XDG_DATA_HOME") != null) {
+                directory = Paths.get(System.getenv("XDG_DATA_HOME"), APPLICATION_NAME);
+            } else {
+                directory = Paths.get(home, ".local", "share", APPLICATION_NAME);
+            }
+        }
+
+        Files.createDirectories(directory);
+        return directory;
+    }
+
+    /**
+     * Copies the bundled database to the data directory.
+     * The database is written to a temporary file first, so an interrupted copy never leaves a broken library behind.
+     *
+     * @param resourceUrl the URL of the bundled database
+     * @param dbFile the path of the library database
+     * @throws IOException if the database can not be copied
+     */
+    private static void seedDatabase(URL resourceUrl, Path dbFile) throws IOException {
+        Path tempFile = Files.createTempFile(dbFile.getParent(), DATABASE_FILE, ".tmp");
+        try (InputStream in = resourceUrl.openStream();
              OutputStream out = Files.newOutputStream(tempFile)) {
-            in.transferTo(out); // 'transferTo' method added in Java 9
+            in.transferTo(out);
         }
-        return tempFile;
+        Files.move(tempFile, dbFile, StandardCopyOption.ATOMIC_MOVE);
     }
 
     /**
@@ -90,7 +333,7 @@ public class DatabaseController {
      *
      * @return the singleton instance of DatabaseController
      */
-    public static DatabaseController getInstance() {
+    public static synchronized DatabaseController getInstance() {
         if (instance == null) {
             instance = new DatabaseController();
         }
@@ -98,28 +341,70 @@ public class DatabaseController {
     }
 
     /**
-     * Provides access to the established database connection.
+     * Leases a connection for reading.
+     * The connection is read-only, unless the current thread holds the writer, then the writer is returned.
+     * The lease must be closed, which returns the connection to the pool.
      *
-     * @return the database connection
+     * @return a connection to read from
+     * @throws SQLException if the database can not be opened or no connection becomes free in time
      */
-    public Connection getConnection() {
-        return connection;
+    public Connection getReadConnection() throws SQLException {
+        if (writeLock.isHeldByCurrentThread()) {
+            return getWriteConnection();
+        }
+        ensureOpen();
+
+        Connection reader = idleReaders.poll();
+        if (reader == null) {
+            reader = openReader();
+        }
+        if (reader == null) {
+            try {
+                reader = idleReaders.poll(LEASE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("Interrupted while waiting for a database connection", e);
+            }
+            if (reader == null) {
+                throw new SQLException("No database connection became free in time");
+            }
+        }
+
+        Connection leased = reader;
+        return lease(leased, () -> releaseReader(leased));
     }
 
     /**
-     * Executes a SQL query that returns a ResultSet, such as SELECT statements.
-     * If an SQLException occurs, the stack trace is printed and null is returned.
+     * Leases the writer connection, waiting until no other thread holds it.
+     * A thread can lease the writer again while it holds it, for example to run several writes in one transaction.
+     * The lease must be closed, the outermost lease rolls back a transaction that was left open and releases the writer.
      *
-     * @param query the SQL query to be executed
-     * @return the ResultSet of the executed query, or null if an error occurs
+     * @return the writer connection
+     * @throws SQLException if the database can not be opened
      */
-    public ResultSet executeQuery(String query) {
-        try {
-            PreparedStatement statement = connection.prepareStatement(query);
-            return statement.executeQuery();
+    public Connection getWriteConnection() throws SQLException {
+        ensureOpen();
+        writeLock.lock();
+        if (connection == null || connection.isClosed()) {
+            writeLock.unlock();
+            throw new SQLException("The library database is closed");
+        }
+        return lease(connection, this::releaseWriter);
+    }
+
+    /**
+     * Checks if the library database can be read.
+     *
+     * @return true if a query could be run, false otherwise
+     */
+    public boolean isConnected() {
+        try (Connection conn = getReadConnection();
+             Statement statement = conn.createStatement();
+             ResultSet rs = statement.executeQuery("SELECT 1")) {
+            return rs.next();
         } catch (SQLException e) {
             e.printStackTrace();
-            return null;
+            return false;
         }
     }
 
@@ -131,8 +416,8 @@ public class DatabaseController {
      * @return the number of affected rows, or 0 if an error occurs
      */
     public int executeUpdate(String query) {
-        try {
-            PreparedStatement statement = connection.prepareStatement(query);
+        try (Connection conn = getWriteConnection();
+             PreparedStatement statement = conn.prepareStatement(query)) {
             return statement.executeUpdate();
         } catch (SQLException e) {
             e.printStackTrace();
@@ -141,73 +426,167 @@ public class DatabaseController {
     }
 
     /**
-     * Closes the database connection if it is open.
+     * Closes the writer and the idle read connections, read connections that are leased are closed when they
+     * are returned. The writer is closed once the thread that holds it is done, this checkpoints the WAL journal.
      * If an SQLException occurs, the stack trace is printed.
      */
     public void close() {
+        writeLock.lock();
         try {
-            if (connection != null && !connection.isClosed()) {
-                connection.close();
+            synchronized (this) {
+                open = false;
+                Connection reader;
+                while ((reader = idleReaders.poll()) != null) {
+                    closeReader(reader);
+                }
+                if (connection != null && !connection.isClosed()) {
+                    connection.close();
+                }
             }
         } catch (SQLException e) {
             e.printStackTrace();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private void ensureOpen() {
+        if (!open) {
+            openConnection();
         }
     }
 
+    /**
+     * Opens a new read-only connection, unless the pool is full.
+     *
+     * @return the connection, or null if READ_POOL_SIZE connections are open
+     */
+    private synchronized Connection openReader() throws SQLException {
+        if (openReaders >= READ_POOL_SIZE) {
+            return null;
+        }
+        SQLiteConfig config = new SQLiteConfig();
+        config.setReadOnly(true);
+        config.setBusyTimeout(BUSY_TIMEOUT_MS);
+        Connection reader = DriverManager.getConnection(dbUrl, config.toProperties());
+        try (Statement statement = reader.createStatement()) {
+            tune(statement);
+        }
+        openReaders++;
+        return reader;
+    }
+
+    private void releaseReader(Connection reader) {
+        if (!resetTransaction(reader) || !open) {
+            closeReader(reader);
+        } else {
+            idleReaders.offer(reader);
+        }
+    }
+
+    private synchronized void closeReader(Connection reader) {
+        openReaders--;
+        try {
+            reader.close();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void releaseWriter() {
+        // Only the outermost lease ends a transaction that was left open
+        if (writeLock.getHoldCount() == 1) {
+            resetTransaction(connection);
+        }
+        writeLock.unlock();
+    }
+
+    /**
+     * Rolls back a transaction that was left open and turns auto-commit back on.
+     *
+     * @return true if the connection can be used again, false otherwise
+     */
+    private static boolean resetTransaction(Connection conn) {
+        try {
+            if (conn.isClosed()) {
+                return false;
+            }
+            if (!conn.getAutoCommit()) {
+                conn.rollback();
+                conn.setAutoCommit(true);
+            }
+            return true;
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     * Wraps a connection in a lease, closing the lease calls release instead of closing the connection.
+     * The lease can not be used after it has been closed.
+     */
+    private static Connection lease(Connection conn, Runnable release) {
+        AtomicBoolean released = new AtomicBoolean(false);
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "close":
+                            if (released.compareAndSet(false, true)) {
+                                release.run();
+                            }
+                            return null;
+                        case "isClosed":
+                            if (released.get()) {
+                                return true;
+                            }
+                            break;
+                        case "equals":
+                            return proxy == args[0];
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        default:
+                            if (released.get()) {
+                                throw new SQLException("The connection lease has been closed");
+                            }
+                    }
+                    try {
+                        return method.invoke(conn, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                });
+    }
+
+    /**
+     * Sets the per connection pragmas shared by the writer and the read connections.
+     */
+    private static void tune(Statement statement) throws SQLException {
+        statement.execute("PRAGMA cache_size = -16000");
+        statement.execute("PRAGMA mmap_size = 268435456");
+        statement.execute("PRAGMA temp_store = MEMORY");
+    }
+
     /**
      * Uploads a model to the database.
-     * The model's fields are mapped to the corresponding columns in the database table.
-     * Fields annotated with @Exclude are ignored.
-     * If an SQLException or IllegalAccessException occurs, the stack trace is printed and -1 is returned.
+     * The model's fields are mapped to the corresponding columns in the database table by its EntityMapper,
+     * fields annotated with @Exclude are ignored.
+     * If an SQLException occurs, the stack trace is printed and -1 is returned.
      *
      * @param <T> the type of the model
      * @param model the model to be uploaded
      * @return the generated key of the inserted row, or -1 if an error occurs
      */
+    @SuppressWarnings("unchecked")
     public <T> int uploadModel(T model) {
+        // Get the prepared mapper of the model's class
+        EntityMapper<T> mapper = EntityMappers.get((Class<T>) model.getClass());
 
-        // Open a connection to the database
-        this.openConnection();
-
-        // Get the table name from the model's class name
-        String tableName = model.getClass().getSimpleName();
-        // Get all declared fields of the model's class
-        Field[] fields = model.getClass().getDeclaredFields();
-        // StringBuilder to store column names
-        StringBuilder columns = new StringBuilder();
-        // StringBuilder to store values placeholders
-        StringBuilder values = new StringBuilder();
-
-        // Iterate over each field
-        for (Field field : fields) {
-            // Skip fields annotated with @Exclude
-            if (field.isAnnotationPresent(Exclude.class)) {
-                continue;
-            }
-            // Make the field accessible
-            field.setAccessible(true);
-            // Append the field name to columns
-            columns.append(field.getName()).append(",");
-            // Append a placeholder to values
-            values.append("?,");
-        }
-
-        // Create the SQL insert statement
-        String sql = String.format("INSERT INTO %s (%s) VALUES (%s)",
-                tableName,
-                columns.substring(0, columns.length() - 1),
-                values.substring(0, values.length() - 1));
-
-        // Execute the SQL insert statement
-        try (PreparedStatement statement = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
-            int index = 1;
+        // Execute the prepared insert statement
+        try (Connection conn = getWriteConnection();
+             PreparedStatement statement = conn.prepareStatement(mapper.getInsertSql(), Statement.RETURN_GENERATED_KEYS)) {
             // Set the values for the placeholders
-            for (Field field : fields) {
-                if (field.isAnnotationPresent(Exclude.class)) {
-                    continue;
-                }
-                statement.setObject(index++, field.get(model));
-            }
+            mapper.bindInsert(statement, model);
             // Execute the update
             statement.executeUpdate();
             // Get the generated keys
@@ -215,9 +594,9 @@ public class DatabaseController {
             if (generatedKeys.next()) {
                 return generatedKeys.getInt(1);
             }
-        } catch (SQLException | IllegalAccessException e) {
+        } catch (SQLException e) {
             e.printStackTrace();
         }
         return -1;
     }
-}
\ No newline at end of file
+}
@@ -1,7 +1,9 @@
 package com.nhlstenden.reader2.controllers;
 
+import com.nhlstenden.reader2.ComicParser.ComicFormats;
 import com.nhlstenden.reader2.models.Serie;
 import com.nhlstenden.reader2.services.ImportService;
+import javafx.application.Platform;
 import javafx.fxml.FXML;
 import javafx.scene.control.*;
 import javafx.stage.FileChooser;
@@ -40,6 +42,12 @@ public class ImportController {
     @FXML
     private Button copySelectedComics;
 
+    @FXML
+    private CheckBox normalizeComics;
+
+    @FXML
+    private ProgressBar importProgress;
+
     private List<File> comicFiles = new ArrayList<>();
     private Serie selectedSerie;
 
@@ -76,7 +84,7 @@ public class ImportController {
      * Opens a file chooser dialog to select comic files and updates the series model.
      *
      * This method opens a file chooser dialog to allow the user to select multiple comic files.
-     * It filters the files to only show comic file types (cbz, cbr, zip, nhlcomic).
+     * It filters the files to only show the comic file types of the available comic formats.
      * If files are selected, it performs the following actions:
      * - If the series name is empty, it sets the series name to the name of the first selected file (without extension).
      * - Adds the names of the selected files to the comics list view.
@@ -87,7 +95,8 @@ public class ImportController {
         // Create a file chooser dialog
         FileChooser fileChooser = new FileChooser();
         // Add filters to only show comic file types
-        fileChooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("Comic Files", "*.cbz", "*.cbr", "*.zip", "*.nhlcomic"));
+        List<String> patterns = ComicFormats.getExtensions().stream().map(extension -> "*" + extension).toList();
+        fileChooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("Comic Files", patterns));
         // Show the file chooser dialog and get the selected files
         List<File> selectedFiles = fileChooser.showOpenMultipleDialog(primaryStage);
 
@@ -111,6 +120,8 @@ public class ImportController {
 
     /**
      * Copies the selected comic files to the destination and closes the primary stage if successful.
+     * When normalizing is selected, the files are first repacked into store-only CBZ files on a background pool
+     * while the progress bar shows how many files are done.
      *
      * This method calls the `copyFiles` method of the `importService` to copy the selected comic files.
      * If the copy operation is successful (indicated by the `close` boolean), it performs the following actions:
@@ -119,6 +130,42 @@ public class ImportController {
      * - Closes the primary stage.
      */
     private void copyFiles() {
+        // Convert the comics to store-only CBZ files in the background first, when asked to
+        if (normalizeComics.isSelected()) {
+            copySelectedComics.setDisable(true);
+            importProgress.setVisible(true);
+            importProgress.setProgress(0);
+
+            importService.normalizeFiles(new ArrayList<>(comicFiles), progress -> Platform.runLater(() -> importProgress.setProgress(progress)))
+                    .whenComplete((normalizedFiles, exception) -> Platform.runLater(() -> {
+                        copySelectedComics.setDisable(false);
+                        importProgress.setVisible(false);
+                        if (exception != null) {
+                            exception.printStackTrace();
+                            Throwable cause = exception.getCause() != null ? exception.getCause() : exception;
+                            String alertMessage = "Failed to convert the comics:\n" + cause.getMessage();
+                            Alert alert = new Alert(Alert.AlertType.ERROR, alertMessage, ButtonType.OK);
+                            alert.setTitle("Warning");
+                            alert.setHeaderText(null);
+                            alert.showAndWait();
+                            return;
+                        }
+
+                        // The chapters get the names of the converted files
+                        comicFiles = new ArrayList<>(normalizedFiles);
+                        importService.updateSerieModel(serieName.getText(), serieDescription.getText(), comicFiles);
+                        finishCopy();
+                    }));
+            return;
+        }
+
+        finishCopy();
+    }
+
+    /**
+     * Copies the comic files into the library and closes the primary stage if successful.
+     */
+    private void finishCopy() {
         boolean close = importService.copyFiles(serieName.getText(), serieDescription.getText(), comicFiles);
         if (close) {
             comicsListView.getItems().clear();
@@ -1,25 +1,25 @@
 package com.nhlstenden.reader2.controllers;
 
-import com.nhlstenden.reader2.DataLibrary.ChapterLibrary;
-import com.nhlstenden.reader2.DataLibrary.SerieLibrary;
+import com.nhlstenden.reader2.DataLibrary.LibraryEvent;
+import com.nhlstenden.reader2.DataLibrary.LibraryRepository;
 import com.nhlstenden.reader2.models.Chapter;
 import com.nhlstenden.reader2.models.Serie;
+import com.nhlstenden.reader2.services.CoverService;
+import com.nhlstenden.reader2.services.SeriesSearchService;
+import javafx.application.Platform;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
-import javafx.embed.swing.SwingFXUtils;
 import javafx.fxml.FXML;
 import javafx.scene.Scene;
 import javafx.scene.control.Button;
 import javafx.scene.control.ListView;
 import javafx.scene.control.TextField;
-import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
 import javafx.scene.text.Text;
 import javafx.stage.Stage;
 import javafx.fxml.FXMLLoader;
 import javafx.stage.Modality;
 
-import javax.imageio.ImageIO;
 import java.io.File;
 import java.io.IOException;
 import java.net.URL;
@@ -72,8 +72,14 @@ public class MainController {
 
     private Stage stage;
 
-    SerieLibrary serieLibrary = new SerieLibrary();
-    ChapterLibrary chapterLibrary = new ChapterLibrary();
+    LibraryRepository libraryRepository = LibraryRepository.getInstance();
+
+    // Loads the covers in the background, keeping the last 64 decoded covers in memory
+    private final CoverService coverService = new CoverService(64);
+
+    // Searches the series in the background while typing, showing at most SEARCH_RESULTS hits
+    private static final int SEARCH_RESULTS = 200;
+    private final SeriesSearchService searchService = new SeriesSearchService(SEARCH_RESULTS);
 
     private Serie selectedSerie;
     private Chapter selectedChapter;
@@ -92,6 +98,9 @@ public class MainController {
         // Load the series into the series list view
         loadSeries();
 
+        // Refresh the series list view whenever a serie is added, renamed or removed
+        libraryRepository.addListener(this::onLibraryChanged);
+
         // Add a listener to the series list view to display the selected serie when the selection changes
         seriesListView.getSelectionModel().selectedItemProperty().addListener((observable, oldValue, newValue) -> displaySerie(newValue));
 
@@ -126,22 +135,31 @@ public class MainController {
 
     /**
      * Filters the series list view based on the search query.
+     * The search runs in the background once the user stops typing, see SeriesSearchService, and the results
+     * are applied to the list view as a minimal diff. An empty query shows all series.
      *
      * @param query The search query entered by the user.
      */
     void filterSeriesList(String query) {
-        ObservableList<String> filteredList = FXCollections.observableArrayList();
+        searchService.search(query, names -> SeriesSearchService.applyDiff(seriesListView.getItems(), names));
+    }
 
-        for (Serie serie : serieLibrary.getAllSeries()) {
-            if (serie.getName().toLowerCase().contains(query.toLowerCase())) {
-                filteredList.add(serie.getName());
-            }
+    /**
+     * Refreshes the series list view after a serie has been added, renamed or removed.
+     * The current search query stays applied.
+     *
+     * @param event The change that was made to the library.
+     */
+    private void onLibraryChanged(LibraryEvent event) {
+        // A removed or re-imported serie may get a different cover
+        if (event.getSerie() != null && event.getType() != LibraryEvent.Type.SERIE_ADDED) {
+            coverService.invalidate(event.getSerie().getName());
         }
 
-        seriesListView.setItems(filteredList);
-
-        filteredList = null;
-        System.gc();
+        if (event.getType() == LibraryEvent.Type.CHAPTERS_CHANGED) {
+            return;
+        }
+        Platform.runLater(() -> filterSeriesList(serieSearch.getText()));
     }
 
     private void setDisableButton(boolean disabled) {
@@ -154,45 +172,42 @@ public class MainController {
     }
 
     /**
-     * Loads the series from the serieLibrary and populates the seriesListView with their names.
+     * Loads the series from the libraryRepository and populates the seriesListView with their names.
      * Creates an observable list of series names and sets it to the seriesListView.
      */
     private void loadSeries() {
         // Create an observable list to hold the names of the series
         ObservableList<String> seriesNames = FXCollections.observableArrayList();
 
-        // Iterate through all the series in the serieLibrary
-        for (Serie serie : serieLibrary.getAllSeries()) {
+        // Iterate through all the series in the libraryRepository
+        for (Serie serie : libraryRepository.getAllSeries()) {
             // Add the name of each series to the observable list
             seriesNames.add(serie.getName());
         }
 
         // Set the observable list as the items of the seriesListView
         seriesListView.setItems(seriesNames);
-
-        seriesNames = null;
-        System.gc();
     }
 
     /**
      * Displays the details of the selected serie.
      *
      * This method performs the following steps:
-     * 1. Retrieves the serie by its name from the serieLibrary.
+     * 1. Retrieves the serie by its name from the libraryRepository.
      * 2. Sets the selectedSerie to the retrieved serie.
      * 3. If the serie is null, the method returns immediately.
      * 4. Updates the UI components with the serie's details:
      *    - Sets the serie's name to the serieTitle text field.
      *    - Sets the serie's description to the serieDescription text field.
      *    - Retrieves and sets the chapters of the serie.
-     *    - Retrieves and sets the cover image of the serie.
+     *    - Shows a placeholder and loads the cover image of the serie in the background.
      *    - Clears and populates the chaptersListView with the titles of the chapters.
      *
      * @param serieName the name of the serie to be displayed
      */
     private void displaySerie(String serieName) {
-        // Retrieve the serie by its name from the serieLibrary
-        Serie serie = serieLibrary.getSerieByName(serieName);
+        // Retrieve the serie by its name from the libraryRepository
+        Serie serie = libraryRepository.getSerieByName(serieName);
         selectedSerie = serie;
 
         // If the serie is null, return immediately
@@ -205,7 +220,7 @@ public class MainController {
         serieDescription.setText(serie.getDescription());
 
         // Retrieve and set the chapters of the serie
-        serie.setChapters(chapterLibrary.getChapterBySerie(serie.getId()));
+        serie.setChapters(libraryRepository.getChapters(serie.getId()));
 
         for (Chapter chapter : serie.getChapters()) {
 
@@ -221,18 +236,12 @@ public class MainController {
                 }
 
                 chapter.setFile(file);
-
-                file = null;
-                System.gc();
-
             }
         }
 
-        // Retrieve and set the cover image of the serie
-        Image coverImage = getCoverImage(serie.getName());
-        serieCoverImage.setImage(coverImage);
-
-        coverImage = null;
+        // Show the placeholder until the cover is loaded, a cached cover is shown right away
+        serieCoverImage.setImage(coverService.getPlaceholder());
+        coverService.loadCover(serie.getName(), serieCoverImage::setImage);
 
         // Clear and populate the chaptersListView with the titles of the chapters
         chaptersListView.getItems().clear();
@@ -252,11 +261,21 @@ public class MainController {
         // Retrieve the selected chapter title from the chaptersListView
         String chapterTitle = chaptersListView.getSelectionModel().getSelectedItem();
 
-        // Retrieve the chapter object by its title from the chapterLibrary
-        Chapter chapter = chapterLibrary.getChapterByName(chapterTitle);
+        // Retrieve the chapter object by its title from the chapters of the selected serie
+        Chapter chapter = null;
+        for (Chapter serieChapter : selectedSerie.getChapters()) {
+            if (serieChapter.getTitle().equals(chapterTitle)) {
+                chapter = serieChapter;
+                break;
+            }
+        }
+        if (chapter == null) {
+            return;
+        }
 
-        // Delete the chapter from the chapterLibrary using its ID
-        chapterLibrary.deleteChapter(chapter.getId());
+        // Delete the chapter from the libraryRepository using its ID
+        libraryRepository.deleteChapter(chapter.getId());
+        selectedSerie.getChapters().remove(chapter);
 
         chapter = null;
 
@@ -290,25 +309,23 @@ public class MainController {
     }
 
     /**
-     * Deletes the selected serie from the serie library and the file system.
+     * Deletes the selected serie from the library and the file system.
      */
     public void deleteSerie() {
         // Retrieve the name of the selected serie from the serieTitle text field
         String serieName = serieTitle.getText();
 
-        // Retrieve the serie object by its name from the serieLibrary
-        Serie serie = serieLibrary.getSerieByName(serieName);
-
-        // Delete the serie from the serieLibrary using its ID
-        serieLibrary.deleteSerie(serie.getId());
+        // Retrieve the serie object by its name from the libraryRepository
+        Serie serie = libraryRepository.getSerieByName(serieName);
 
-        // Delete all chapters associated with the serie from the chapterLibrary
-        chapterLibrary.deleteChapterBySerie(serie.getId());
+        // Delete the serie and all chapters associated with it, this also refreshes the series list view
+        libraryRepository.deleteSerie(serie.getId());
 
         // Clear the UI components related to the serie
         chaptersListView.getItems().clear();
         serieTitle.setText("");
         serieDescription.setText("");
+        coverService.cancel();
         serieCoverImage.setImage(null);
 
         try {
@@ -324,46 +341,12 @@ public class MainController {
             e.printStackTrace();
         }
 
-        // Reload the series list view
-        loadSeries();
-
         serieName = null;
         serie = null;
         System.gc();
         setDisableButton(true);
     }
 
-    /**
-     * Retrieves the cover image for a given serie.
-     *
-     * This method attempts to load the cover image from the file system based on the serie title.
-     * If the cover image is found, it is converted to a JavaFX Image and returned.
-     * If any exception occurs during this process, the exception is caught and printed, and null is returned.
-     *
-     * @param serieTitle The title of the serie for which the cover image is to be retrieved.
-     * @return The cover image as a JavaFX Image, or null if the image is not found or an error occurs.
-     */
-    private Image getCoverImage(String serieTitle) {
-        try {
-            // Construct the URL to the cover image file based on the serie title
-            URL resourceUrl = getClass().getResource("/com/nhlstenden/reader2/comics/" + serieTitle + "/cover.jpg");
-            if (resourceUrl != null) {
-                // Convert the URL to a File object
-                File imageFile = Paths.get(resourceUrl.toURI()).toFile();
-                // Convert the BufferedImage to a JavaFX Image and return it
-                return SwingFXUtils.toFXImage(ImageIO.read(imageFile), null);
-            }
-        } catch (Exception e) {
-            // Catch and print any exceptions that occur during the image loading process
-            e.printStackTrace();
-        }
-
-        System.gc();
-
-        // Return null if the image is not found or an error occurs
-        return null;
-    }
-
     /**
      * Opens the comic import view.
      *
@@ -459,7 +442,7 @@ public class MainController {
 
             // When the reader stage is closed, reload the chapters, update the UI, and show the main stage
             readStage.setOnHiding(event -> {
-                selectedSerie.setChapters(chapterLibrary.getChapterBySerie(selectedSerie.getId()));
+                selectedSerie.setChapters(libraryRepository.getChapters(selectedSerie.getId()));
                 displaySerie(selectedSerie.getName());
                 readController.cleanup();
                 this.stage.show();
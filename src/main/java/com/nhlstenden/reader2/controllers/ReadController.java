@@ -1,9 +1,10 @@
 package com.nhlstenden.reader2.controllers;
 
-import com.nhlstenden.reader2.DataLibrary.ChapterLibrary;
+import com.nhlstenden.reader2.ComicParser.GifAnimation;
+import com.nhlstenden.reader2.ComicParser.PageList;
+import com.nhlstenden.reader2.DataLibrary.LibraryRepository;
 import com.nhlstenden.reader2.models.Serie;
-import com.nhlstenden.reader2.models.Chapter;
-import com.nhlstenden.reader2.ComicParser.Parser;
+import com.nhlstenden.reader2.services.PrefetchService;
 import javafx.beans.binding.Bindings;
 import javafx.beans.value.ObservableValue;
 import javafx.fxml.FXML;
@@ -14,11 +15,12 @@ import javafx.scene.input.KeyCode;
 import javafx.scene.input.KeyEvent;
 import javafx.scene.layout.BorderPane;
 import javafx.scene.text.Text;
+import javafx.stage.Screen;
 import javafx.stage.Stage;
 
-import java.io.File;
 import java.net.URL;
 import java.util.IllegalFormatCodePointException;
+import java.util.List;
 
 public class ReadController {
 
@@ -45,10 +47,27 @@ public class ReadController {
     @FXML
     private ImageView imageViewRight;
 
+    // Placeholder page index while the size of a previous chapter is not known yet
+    private static final int LAST_PAGE = -1;
+
+    // Number of decoded frames an animated page keeps ahead
+    private static final int ANIMATION_BUFFER_FRAMES = 4;
+
+    // Pages are decoded for the viewport size rounded up to this step, so resizing does not re-decode every time
+    private static final int TARGET_SIZE_STEP = 256;
+
     private Serie serie;
+    private PrefetchService prefetchService;
     private int currentPage = 0;
     private int currentChapter = 0;
 
+    // Playback of the current page, if it is animated
+    private GifAnimation animation;
+
+    // Size the pages are currently decoded for, in device pixels
+    private int targetWidth = 0;
+    private int targetHeight = 0;
+
     public void initialize() {
         // Initialize the controller, set up any necessary data or bindings
         closeComicButton.setOnAction(event -> handleCloseComicButtonAction());
@@ -60,27 +79,19 @@ public class ReadController {
      * Cleans up resources used by the reader.
      *
      * This method clears the image references in the primary image view and
-     * cancels any ongoing loading of pages in the chapters of the current series.
-     * It also sets the pages of each chapter to null and suggests garbage collection.
+     * stops the prefetching, which closes the pages of the chapters and releases any open archives.
+     * Decoded pages stay in the shared PageCache, which is bounded by its own memory budget.
      */
     public void cleanup() {
+        stopAnimation();
+
         // Clear image references
         primaryImageView.setImage(null);
 
-        // Iterate through each chapter in the series
-        for (Chapter chapter : serie.getChapters()) {
-            if (chapter.getPages() != null) {
-                // Cancel any ongoing loading for each page in the chapter
-                for (Image page : chapter.getPages()) {
-                    page.cancel();
-                }
-                // Set the pages of the chapter to null
-                chapter.setPages(null);
-            }
+        // Stop prefetching and close the pages of every chapter
+        if (prefetchService != null) {
+            prefetchService.shutdown();
         }
-
-        // Suggest garbage collection
-        System.gc();
     }
 
     private void handleCloseComicButtonAction() {
@@ -92,154 +103,211 @@ public class ReadController {
      *
      * This method checks if the current page is the first page. If it is, it checks if there are previous chapters
      * and navigates to the last page of the previous chapter. If it is not the first page, it simply decrements the current page.
-     * It then updates the primary image view with the new page or loads the chapter in the background if the pages are not available.
+     * It then shows the new page.
      */
     private void handlePreviousPageButtonAction() {
-        if (currentPage == 0) {
-            if (currentChapter > 0) {
-                currentChapter--;
-
-                // Disable navigation buttons while loading the previous chapter
-                nextPageButton.setDisable(true);
-                previousPageButton.setDisable(true);
-            }
-        } else {
-            currentPage--;
+        // Wait until the last page of the chapter is known
+        if (currentPage == LAST_PAGE) {
+            return;
         }
 
-        if (serie.getChapters().get(currentChapter).getPages() != null) {
-            // Update the primary image view with the previous page
-            primaryImageView.setImage(serie.getChapters().get(currentChapter).getPages().get(currentPage));
-            setReaderInfo(false);
+        if (currentPage > 0) {
+            currentPage--;
+        } else if (currentChapter > 0) {
+            // Move to the last page of the previous chapter
+            currentChapter--;
+            List<Image> pages = prefetchService.getPages(currentChapter);
+            currentPage = pages != null ? pages.size() - 1 : LAST_PAGE;
+            updateLastRead(currentChapter);
         } else {
-            // Set loading information and load the chapter in the background
-            setReaderInfo(true);
-            primaryImageView.setImage(null);
-            loadChapterInBackground(currentChapter, false);
+            // There is no previous page
+            return;
         }
+
+        showCurrentPage(false);
     }
 
     /**
      * Handles the action for the next page button.
      *
      * This method checks if the current page is the last page of the current chapter.
-     * If it is, it increments the current chapter and resets the current page to 0.
-     * It then disables the navigation buttons while loading the next chapter.
+     * If it is, it moves to the first page of the next chapter, or closes the reader after the last chapter.
      * If it is not the last page, it simply increments the current page.
-     * It then updates the primary image view with the new page or loads the chapter in the background if the pages are not available.
+     * It then shows the new page.
      */
     private void handleNextPageButtonAction() {
+        // Wait until the last page of the chapter is known, the chapter may be shown before it is
+        if (currentPage == LAST_PAGE) {
+            return;
+        }
 
-        // Check if the current page is the last page of the current chapter
-        if (currentPage == serie.getChapters().get(currentChapter).getPages().size() - 1) {
-            // Move to the next chapter and reset the current page to 0
-            currentChapter++;
-            currentPage = 0;
+        List<Image> pages = prefetchService.getPages(currentChapter);
 
-            // Disable navigation buttons while loading the next chapter
-            nextPageButton.setDisable(true);
-            previousPageButton.setDisable(true);
+        // Wait until the current chapter is opened
+        if (pages == null) {
+            return;
+        }
 
-        } else {
+        if (currentPage < pages.size() - 1) {
             // Move to the next page within the current chapter
             currentPage++;
-        }
-
-        // Check if the current chapter is the last chapter in the series
-        if (currentChapter == serie.getChapters().size()) {
+        } else if (currentChapter < serie.getChapters().size() - 1) {
+            // Move to the next chapter and reset the current page to 0
+            currentChapter++;
+            currentPage = 0;
+            updateLastRead(currentChapter);
+        } else {
             // Close the primary stage if there are no more chapters
             this.primaryStage.close();
-        } else if (serie.getChapters().get(currentChapter).getPages() != null) {
-            // If the pages of the next chapter are already loaded, update the primary image view
-            primaryImageView.setImage(serie.getChapters().get(currentChapter).getPages().get(currentPage));
-            setReaderInfo(false);
-        } else {
-            // If the pages are not loaded, set loading information and load the chapter in the background
-            setReaderInfo(true);
-            primaryImageView.setImage(null);
-            loadChapterInBackground(currentChapter, true);
+            return;
         }
 
+        showCurrentPage(true);
     }
 
     /**
-     * Loads the specified chapter in the background.
+     * Shows the current page and moves the prefetch window along.
      *
-     * This method cancels any ongoing loading of pages in the chapters of the current series,
-     * clears the pages of each chapter, and suggests garbage collection. It then starts a new thread
-     * to parse and load the specified chapter. Once the chapter is loaded, it updates the primary image view
-     * and the reader information, and re-enables the navigation buttons.
+     * Pages inside the prefetch window are already decoded and are shown right away, also across chapter boundaries.
+     * Any other page is loaded in the background while the reader information shows that the page is loading.
      *
-     * @param chapterId The ID of the chapter to load.
-     * @param nextPage  A boolean indicating whether to load the first page (true) or the last page (false) of the chapter.
+     * @param forward A boolean indicating whether the reader moved forwards (true) or backwards (false).
      */
-    private void loadChapterInBackground(int chapterId, boolean nextPage) {
+    private void showCurrentPage(boolean forward) {
+        int chapterIndex = currentChapter;
+        int pageIndex = currentPage;
 
-        // Cancel any ongoing loading and clear the pages of each chapter
-        for (Chapter chapter : serie.getChapters()) {
-            if (chapter.getPages() != null) {
-                for (Image page : chapter.getPages()) {
-                    page.cancel(); // Cancel any ongoing loading
-                }
-                chapter.setPages(null);
-            }
+        stopAnimation();
+
+        // Look the chapter up once, it can be closed by the prefetch thread at any time
+        List<Image> pages = prefetchService.getPages(chapterIndex);
+        if (pageIndex != LAST_PAGE && prefetchService.isReady(pages, pageIndex)) {
+            // The page is decoded already
+            displayPage(chapterIndex, pageIndex, pages.get(pageIndex));
+            setReaderInfo(false);
+            prefetchService.update(chapterIndex, pageIndex, forward);
+            return;
         }
-        System.gc(); // Suggest garbage collection
-
-        // Start a new thread to load the specified chapter
-        Thread nextChapterThread = new Thread(() -> {
-            Parser parser = new Parser();
-            parser.setChapter(serie.getChapters().get(chapterId));
-            File compressedFile = serie.getChapters().get(chapterId).getFile();
-            parser.setCompressedComic(compressedFile);
-            compressedFile = null;
-            System.gc(); // Suggest garbage collection
-
-            try {
-                // Parse and load the chapter
-                Chapter nextChapter = parser.parse();
-                serie.getChapters().get(chapterId).setPages(nextChapter.getPages());
-
-                nextChapter = null;
-                System.gc(); // Suggest garbage collection
-
-                if (true) {
-                    // Update the UI on the JavaFX Application Thread
-                    javafx.application.Platform.runLater(() -> {
-                        ChapterLibrary chapterLibrary = new ChapterLibrary();
-
-                        // Update the last read chapter
-                        if (chapterLibrary.setLastRead(serie.getChapters().get(chapterId).getId())) {
-                            System.out.println("Last read updated");
-                        } else {
-                            System.out.println("Failed to update last read");
-                        }
 
-                        // Update the primary image view with the first or last page of the chapter
-                        if (nextPage) {
-                            currentPage = 0;
-                            primaryImageView.setImage(serie.getChapters().get(chapterId).getPages().getFirst());
-                        } else {
-                            currentPage = serie.getChapters().get(chapterId).getPages().size() - 1;
-                            primaryImageView.setImage(serie.getChapters().get(chapterId).getPages().getLast());
+        // Set loading information and load the page in the background
+        setReaderInfo(true);
+        primaryImageView.setImage(null);
+
+        prefetchService.loadPageAsync(chapterIndex, pageIndex).whenComplete((page, exception) ->
+                javafx.application.Platform.runLater(() -> {
+                    if (exception != null) {
+                        exception.printStackTrace();
+                        return;
+                    }
+
+                    // Ignore the page if the reader moved on in the meantime
+                    if (chapterIndex != currentChapter || pageIndex != currentPage) {
+                        return;
+                    }
+
+                    if (currentPage == LAST_PAGE) {
+                        List<Image> loadedPages = prefetchService.getPages(chapterIndex);
+                        if (loadedPages == null) {
+                            // The chapter was closed again before the page could be shown, load it once more
+                            showCurrentPage(forward);
+                            return;
                         }
-                        setReaderInfo(false);
-                        nextPageButton.setDisable(false);
-                        previousPageButton.setDisable(false);
-                    });
-                }
+                        currentPage = loadedPages.size() - 1;
+                    }
+                    displayPage(chapterIndex, currentPage, page);
+                    setReaderInfo(false);
+                    prefetchService.update(currentChapter, currentPage, forward);
+                }));
+    }
 
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
+    /**
+     * Shows a decoded page, and starts playing it when it is an animated page.
+     * The frames are streamed from the archive, the page itself stays shown until the first frame is ready.
+     *
+     * @param chapterIndex The index of the chapter within the series.
+     * @param pageIndex The index of the page within the chapter.
+     * @param page The decoded page.
+     */
+    private void displayPage(int chapterIndex, int pageIndex, Image page) {
+        primaryImageView.setImage(page);
 
-            parser = null;
-            System.gc(); // Suggest garbage collection
-            Runtime.getRuntime().freeMemory();
+        if (prefetchService.getPages(chapterIndex) instanceof PageList pageList && pageList.isAnimated(pageIndex)) {
+            animation = new GifAnimation(pageList, pageIndex, page, ANIMATION_BUFFER_FRAMES);
+            animation.play(primaryImageView::setImage);
+        }
+    }
 
-        });
+    /**
+     * Stops the animation of the current page, if any.
+     */
+    private void stopAnimation() {
+        if (animation != null) {
+            animation.close();
+            animation = null;
+        }
+    }
+
+    /**
+     * Updates the size the pages are decoded for, from the viewport size and the output scale of the screen.
+     *
+     * Pages are only decoded again when the viewport grows beyond the current target size, then the current page
+     * is decoded again in the background while the smaller version stays shown. Shrinking the window keeps the
+     * larger pages, those are scaled down by the image view.
+     */
+    private void updateTargetSize() {
+        double viewWidth = Math.max(primaryImageView.getFitWidth(), primaryStage.getMinWidth() - 80.0);
+        double viewHeight = Math.max(primaryImageView.getFitHeight(), primaryStage.getMinHeight() - 40.0);
+        double scale = Math.max(primaryStage.getOutputScaleY(), Screen.getPrimary().getOutputScaleY());
+
+        int width = roundUp(viewWidth * scale);
+        int height = roundUp(viewHeight * scale);
+        if (width <= targetWidth && height <= targetHeight) {
+            return;
+        }
+
+        boolean grew = targetWidth > 0;
+        targetWidth = Math.max(width, targetWidth);
+        targetHeight = Math.max(height, targetHeight);
+        prefetchService.setTargetSize(targetWidth, targetHeight);
 
-        nextChapterThread.start(); // Start the thread
+        if (grew) {
+            refreshCurrentPage();
+        }
+    }
+
+    private static int roundUp(double size) {
+        return (int) Math.ceil(size / TARGET_SIZE_STEP) * TARGET_SIZE_STEP;
+    }
+
+    /**
+     * Decodes the current page again in the background and shows it, without showing the loading information.
+     */
+    private void refreshCurrentPage() {
+        int chapterIndex = currentChapter;
+        int pageIndex = currentPage;
+        if (pageIndex == LAST_PAGE || animation != null) {
+            return;
+        }
+
+        prefetchService.loadPageAsync(chapterIndex, pageIndex).whenComplete((page, exception) ->
+                javafx.application.Platform.runLater(() -> {
+                    if (exception == null && chapterIndex == currentChapter && pageIndex == currentPage && animation == null) {
+                        primaryImageView.setImage(page);
+                    }
+                }));
+    }
+
+    /**
+     * Updates the last read timestamp of the given chapter.
+     *
+     * @param chapterId The ID of the chapter within the series.
+     */
+    private void updateLastRead(int chapterId) {
+        if (LibraryRepository.getInstance().setLastRead(serie.getChapters().get(chapterId).getId())) {
+            System.out.println("Last read updated");
+        } else {
+            System.out.println("Failed to update last read");
+        }
     }
 
     /**
@@ -316,7 +384,7 @@ public class ReadController {
      *
      * This method initializes the series and updates the primary stage title to indicate loading.
      * It sets the reader information to loading, binds the primary image view's dimensions to the center area of the main border pane,
-     * and sets the center of the main border pane to the primary image view. It then starts loading the first chapter in the background.
+     * and sets the center of the main border pane to the primary image view. It then starts prefetching and loads the first page of the current chapter.
      *
      * @param serie The series to be set for this controller.
      */
@@ -341,8 +409,18 @@ public class ReadController {
         setReaderInfo(true);
         primaryImageView.setImage(null);
 
-        // Load the first chapter in the background
-        loadChapterInBackground(currentChapter, true);
+        // Start prefetching for this serie and load the first page of the current chapter
+        prefetchService = new PrefetchService(serie.getChapters());
+
+        // Decode pages for the viewport, and decode them again when the viewport grows
+        updateTargetSize();
+        mainBorderPane.widthProperty().addListener((observable, oldValue, newValue) -> updateTargetSize());
+        mainBorderPane.heightProperty().addListener((observable, oldValue, newValue) -> updateTargetSize());
+        primaryStage.outputScaleYProperty().addListener((observable, oldValue, newValue) -> updateTargetSize());
+
+        currentPage = 0;
+        updateLastRead(currentChapter);
+        showCurrentPage(true);
     }
 
     /**
@@ -361,7 +439,8 @@ public class ReadController {
             readerInformation.setText("Loading...");
         } else {
             String chapterInfo = "Chapter " + (currentChapter + 1) + " / " + serie.getChapters().size();
-            String pageInfo = "Page " + (currentPage + 1) + " / " + serie.getChapters().get(currentChapter).getPages().size();
+            List<Image> pages = prefetchService.getPages(currentChapter);
+            String pageInfo = "Page " + (currentPage + 1) + " / " + (pages != null ? pages.size() : "?");
 
             readerInformation.setText(chapterInfo + " - " + pageInfo);
         }
@@ -4,7 +4,9 @@ import com.nhlstenden.reader2.ComicParser.RarParser;
 import com.nhlstenden.reader2.annotations.Exclude;
 import javafx.scene.image.Image;
 
+import java.io.Closeable;
 import java.io.File;
+import java.io.IOException;
 import java.net.URL;
 import java.nio.file.Paths;
 import java.time.LocalDateTime;
@@ -114,4 +116,19 @@ public class Chapter {
         this.Pages = Pages;
     }
 
+    /**
+     * Releases the pages of this chapter.
+     * Lazily loaded page lists keep their archive open, so they are closed before being dropped.
+     */
+    public void closePages() {
+        if (Pages instanceof Closeable) {
+            try {
+                ((Closeable) Pages).close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        Pages = null;
+    }
+
 }
@@ -0,0 +1,112 @@
+package com.nhlstenden.reader2.models;
+
+public class Page {
+
+    private int Id;
+    private int ChapterId;
+    private String EntryName;
+    private int PageIndex;
+    private long CompressedSize;
+    private long UncompressedSize;
+    private long HeaderOffset;
+    private int Width;
+    private int Height;
+
+    public Page(int ChapterId, String EntryName, int PageIndex, long CompressedSize, long UncompressedSize, long HeaderOffset, int Width, int Height) {
+        this.ChapterId = ChapterId;
+        this.EntryName = EntryName;
+        this.PageIndex = PageIndex;
+        this.CompressedSize = CompressedSize;
+        this.UncompressedSize = UncompressedSize;
+        this.HeaderOffset = HeaderOffset;
+        this.Width = Width;
+        this.Height = Height;
+    }
+
+    public int getId() {
+        return Id;
+    }
+
+    public int getChapterId() {
+        return ChapterId;
+    }
+
+    public String getEntryName() {
+        return EntryName;
+    }
+
+    public int getPageIndex() {
+        return PageIndex;
+    }
+
+    public long getCompressedSize() {
+        return CompressedSize;
+    }
+
+    public long getUncompressedSize() {
+        return UncompressedSize;
+    }
+
+    /**
+     * Returns the offset of the local file header of the page entry in the ZIP archive.
+     *
+     * @return the offset of the local file header in bytes.
+     */
+    public long getHeaderOffset() {
+        return HeaderOffset;
+    }
+
+    public int getWidth() {
+        return Width;
+    }
+
+    public int getHeight() {
+        return Height;
+    }
+
+    /**
+     * Returns the aspect ratio (width / height) of the page, known without decoding it.
+     *
+     * @return the aspect ratio, or 0 if the dimensions are unknown.
+     */
+    public double getAspectRatio() {
+        return Width > 0 && Height > 0 ? (double) Width / Height : 0;
+    }
+
+    public void setId(int Id) {
+        this.Id = Id;
+    }
+
+    public void setChapterId(int ChapterId) {
+        this.ChapterId = ChapterId;
+    }
+
+    public void setEntryName(String EntryName) {
+        this.EntryName = EntryName;
+    }
+
+    public void setPageIndex(int PageIndex) {
+        this.PageIndex = PageIndex;
+    }
+
+    public void setCompressedSize(long CompressedSize) {
+        this.CompressedSize = CompressedSize;
+    }
+
+    public void setUncompressedSize(long UncompressedSize) {
+        this.UncompressedSize = UncompressedSize;
+    }
+
+    public void setHeaderOffset(long HeaderOffset) {
+        this.HeaderOffset = HeaderOffset;
+    }
+
+    public void setWidth(int Width) {
+        this.Width = Width;
+    }
+
+    public void setHeight(int Height) {
+        this.Height = Height;
+    }
+
+}
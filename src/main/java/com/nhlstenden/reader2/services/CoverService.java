@@ -0,0 +1,162 @@
+package com.nhlstenden.reader2.services;
+
+import com.nhlstenden.reader2.ComicParser.CoverExtractor;
+import javafx.application.Platform;
+import javafx.scene.image.Image;
+import javafx.stage.Screen;
+
+import java.io.File;
+import java.net.URL;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+/**
+ * Service that loads the covers of the series browser in the background.
+ *
+ * Covers are read and decoded on a background thread and kept in a small LRU cache, so selecting a serie
+ * never waits on disk I/O. Only the latest request is delivered: a new request cancels the one before it.
+ * Callbacks are always called on the JavaFX Application Thread.
+ */
+public class CoverService {
+
+    private final int maxEntries;
+
+    // Access ordered map, the least recently used cover is evicted first
+    private final Map<String, Image> covers;
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "cover-loader");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Image placeholder;
+
+    private Future<?> pendingRequest;
+    private long requestId = 0;
+
+    /**
+     * Creates a new CoverService.
+     *
+     * @param maxEntries the maximum number of decoded covers to keep in memory.
+     */
+    public CoverService(int maxEntries) {
+        this.maxEntries = maxEntries;
+        this.covers = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Image> eldest) {
+                return size() > CoverService.this.maxEntries;
+            }
+        };
+
+        URL iconUrl = getClass().getResource("/com/nhlstenden/reader2/images/icon.png");
+        this.placeholder = iconUrl != null ? new Image(iconUrl.toString()) : null;
+    }
+
+    /**
+     * Returns the image that is shown while a cover is loading or when a serie has no cover.
+     *
+     * @return the placeholder image.
+     */
+    public Image getPlaceholder() {
+        return placeholder;
+    }
+
+    /**
+     * Loads the cover of a serie and passes it to the callback.
+     *
+     * A cached cover is passed right away. Otherwise the cover is loaded in the background and passed when it is ready,
+     * unless another cover has been requested in the meantime. When the serie has no cover the placeholder is passed.
+     * Must be called on the JavaFX Application Thread.
+     *
+     * @param serieName the name of the serie.
+     * @param onLoaded the callback receiving the cover.
+     */
+    public void loadCover(String serieName, Consumer<Image> onLoaded) {
+        // Any older request is stale now
+        cancel();
+        long id = requestId;
+
+        Image cached;
+        synchronized (covers) {
+            cached = covers.get(serieName);
+        }
+        if (cached != null) {
+            onLoaded.accept(cached);
+            return;
+        }
+
+        pendingRequest = executor.submit(() -> {
+            Image cover = readCover(serieName);
+            if (cover != null) {
+                synchronized (covers) {
+                    covers.put(serieName, cover);
+                }
+            }
+
+            Platform.runLater(() -> {
+                // Only deliver the cover if it is still the latest request
+                if (id == requestId) {
+                    onLoaded.accept(cover != null ? cover : placeholder);
+                }
+            });
+        });
+    }
+
+    /**
+     * Cancels the pending cover request, if any. Must be called on the JavaFX Application Thread.
+     */
+    public void cancel() {
+        requestId++;
+        if (pendingRequest != null) {
+            pendingRequest.cancel(true);
+            pendingRequest = null;
+        }
+    }
+
+    /**
+     * Removes the cover of a serie from the cache, for example after the serie has been deleted.
+     *
+     * @param serieName the name of the serie.
+     */
+    public void invalidate(String serieName) {
+        synchronized (covers) {
+            covers.remove(serieName);
+        }
+    }
+
+    /**
+     * Reads and decodes the cover of a serie, preferring the HiDPI variant on scaled screens.
+     *
+     * @return the cover, or null if the serie has no cover (yet).
+     */
+    private Image readCover(String serieName) {
+        try {
+            String coverDir = "/com/nhlstenden/reader2/comics/" + serieName + "/";
+
+            URL resourceUrl = null;
+            if (Screen.getPrimary().getOutputScaleX() > 1.0) {
+                resourceUrl = getClass().getResource(coverDir + CoverExtractor.COVER_FILE_HIDPI);
+            }
+            if (resourceUrl == null) {
+                resourceUrl = getClass().getResource(coverDir + CoverExtractor.COVER_FILE);
+            }
+            if (resourceUrl == null || Thread.currentThread().isInterrupted()) {
+                return null;
+            }
+
+            // Decode synchronously, this already runs in the background
+            File imageFile = Paths.get(resourceUrl.toURI()).toFile();
+            Image cover = new Image(imageFile.toURI().toString(), false);
+            return cover.isError() ? null : cover;
+        } catch (Exception e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+}
@@ -1,41 +1,62 @@
 package com.nhlstenden.reader2.services;
 
-import com.nhlstenden.reader2.ComicParser.Parser;
-import com.nhlstenden.reader2.DataLibrary.ChapterLibrary;
-import com.nhlstenden.reader2.DataLibrary.SerieLibrary;
-import com.nhlstenden.reader2.controllers.DatabaseController;
+import com.nhlstenden.reader2.ComicParser.CbzNormalizer;
+import com.nhlstenden.reader2.ComicParser.CoverExtractor;
+import com.nhlstenden.reader2.ComicParser.PageIndexer;
+import com.nhlstenden.reader2.DataLibrary.LibraryRepository;
 import com.nhlstenden.reader2.models.Chapter;
 import com.nhlstenden.reader2.models.Serie;
 import javafx.scene.control.Alert;
 import javafx.scene.control.ButtonType;
-import javafx.scene.image.Image;
-import javafx.scene.image.PixelReader;
-import javafx.scene.image.WritablePixelFormat;
+import org.apache.commons.io.FileUtils;
 
-import javax.imageio.ImageIO;
-import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
 import java.net.URL;
-import java.nio.IntBuffer;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.DoubleConsumer;
 
 /**
  * Service class for importing comic series and chapters.
  */
 public class ImportService {
 
-    private final ChapterLibrary chapterLibrary = new ChapterLibrary();
-    private final SerieLibrary serieLibrary = new SerieLibrary();
+    private final LibraryRepository libraryRepository = LibraryRepository.getInstance();
     private Serie selectedSerie = null;
     private Serie serieModel;
     private final List<String> supportedExtensions = List.of("*.cbz", "*.cbr", "*.zip", "*.nhlcomic");
 
+    // Background pool that repacks comics into store-only CBZ files, shared by all imports
+    private static final ExecutorService normalizePool = Executors.newFixedThreadPool(
+            Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2)), runnable -> {
+                Thread thread = new Thread(runnable, "comic-normalizer");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    // Writes the covers of new series in the background, one at a time
+    private static final ExecutorService coverWriter = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "cover-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Normalized files in the staging directory, these are moved into the library instead of copied
+    private final Set<File> stagedFiles = new HashSet<>();
+    // Directory the normalized files are written to, deleted once they are copied into the library
+    private Path stagingDir;
+
     /**
      * Updates the Serie model with the given name, description, and list of comic files.
      *
@@ -60,6 +81,71 @@ public class ImportService {
         serieModel.setChapters(chapters);
     }
 
+    /**
+     * Repacks the given comic files into store-only CBZ files on a background pool.
+     *
+     * CBR files and CBZ/ZIP files with compressed pages are converted into a staging directory, other files
+     * are returned unchanged. The files are converted in parallel, the returned list keeps the given order.
+     * The converted files are moved into the library by copyFiles.
+     *
+     * @param comicFiles the list of comic files
+     * @param progress   called with the fraction of files that is done, on a background thread
+     * @return a future with the files to import, normalized where possible
+     */
+    public CompletableFuture<List<File>> normalizeFiles(List<File> comicFiles, DoubleConsumer progress) {
+        CbzNormalizer normalizer = new CbzNormalizer();
+        AtomicInteger done = new AtomicInteger();
+        deleteStagingDir();
+        Path importDir;
+        try {
+            importDir = Files.createTempDirectory("reader2-import");
+            stagingDir = importDir;
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+
+        List<CompletableFuture<File>> conversions = new ArrayList<>();
+        for (int i = 0; i < comicFiles.size(); i++) {
+            File file = comicFiles.get(i);
+            // Every file gets its own directory, so files with the same base name do not overwrite each other
+            Path fileDir = importDir.resolve(String.valueOf(i));
+            conversions.add(CompletableFuture.supplyAsync(() -> {
+                File result = file;
+                try {
+                    if (normalizer.needsNormalizing(file)) {
+                        Files.createDirectories(fileDir);
+                        result = normalizer.normalize(file, fileDir.toFile());
+                    }
+                } catch (IOException e) {
+                    // Keep the original file when it can not be converted
+                    e.printStackTrace();
+                }
+                progress.accept((double) done.incrementAndGet() / comicFiles.size());
+                return result;
+            }, normalizePool));
+        }
+
+        return CompletableFuture.allOf(conversions.toArray(new CompletableFuture<?>[0])).thenApply(ignored -> {
+            List<File> normalizedFiles = new ArrayList<>();
+            Set<String> names = new HashSet<>();
+            for (int i = 0; i < conversions.size(); i++) {
+                File normalizedFile = conversions.get(i).join();
+                // Two files can not get the same name in the library, then the later one is imported as it is
+                if (!names.add(normalizedFile.getName()) && !comicFiles.contains(normalizedFile)) {
+                    normalizedFile = comicFiles.get(i);
+                    names.add(normalizedFile.getName());
+                }
+                if (!comicFiles.contains(normalizedFile)) {
+                    synchronized (stagedFiles) {
+                        stagedFiles.add(normalizedFile);
+                    }
+                }
+                normalizedFiles.add(normalizedFile);
+            }
+            return normalizedFiles;
+        });
+    }
+
     /**
      * Copies the given comic files to the target directory and updates the Serie model.
      *
@@ -69,6 +155,33 @@ public class ImportService {
      * @return true if the operation was successful, false otherwise
      */
     public boolean copyFiles(String serieName, String serieDescription, List<File> comicFiles) {
+        try {
+            return copyIntoLibrary(serieName, serieDescription, comicFiles);
+        } finally {
+            deleteStagingDir();
+        }
+    }
+
+    /**
+     * Deletes the staging directory of the last normalization, together with the files that were not moved
+     * into the library.
+     */
+    private void deleteStagingDir() {
+        synchronized (stagedFiles) {
+            stagedFiles.clear();
+        }
+        if (stagingDir == null) {
+            return;
+        }
+        try {
+            FileUtils.deleteDirectory(stagingDir.toFile());
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        stagingDir = null;
+    }
+
+    private boolean copyIntoLibrary(String serieName, String serieDescription, List<File> comicFiles) {
         // Get the URL of the target directory
         URL targetDirUrl = getClass().getResource("/com/nhlstenden/reader2/comics/" + serieName);
         // Get the resource path
@@ -96,10 +209,19 @@ public class ImportService {
             }
         }
 
-        // Copy each comic file to the target directory
+        // Copy each comic file to the target directory, normalized files are moved out of the staging directory
         for (File file : comicFiles) {
             try {
-                Files.copy(file.toPath(), new File(targetDir, file.getName()).toPath(), StandardCopyOption.REPLACE_EXISTING);
+                Path target = new File(targetDir, file.getName()).toPath();
+                boolean staged;
+                synchronized (stagedFiles) {
+                    staged = stagedFiles.remove(file);
+                }
+                if (staged) {
+                    Files.move(file.toPath(), target, StandardCopyOption.REPLACE_EXISTING);
+                } else {
+                    Files.copy(file.toPath(), target, StandardCopyOption.REPLACE_EXISTING);
+                }
             } catch (IOException e) {
                 e.printStackTrace();
             }
@@ -114,7 +236,8 @@ public class ImportService {
         if (this.selectedSerie == null) {
             close = uploadSerieModel();
             File finalTargetDir = targetDir;
-            new Thread(() -> saveCoverImage(finalTargetDir, comicFiles.getFirst())).start();
+            File coverSource = new File(finalTargetDir, comicFiles.getFirst().getName());
+            coverWriter.execute(() -> saveCoverImage(finalTargetDir, coverSource));
         } else {
             try {
                 serieModel.setId(this.selectedSerie.getId());
@@ -126,91 +249,39 @@ public class ImportService {
         // Upload the Chapter models
         uploadChapterModel();
 
+        // Write the page tables of the new chapters in the background
+        for (Chapter chapter : serieModel.getChapters()) {
+            PageIndexer.indexInBackground(chapter.getId(), new File(targetDir, chapter.getTitle()));
+        }
+
         return close;
     }
 
     /**
      * Saves the cover image for the series.
+     * Only the first page of the comic file is read and decoded, straight to the cover size.
      *
      * @param targetDir  the target directory where the cover image will be saved
-     * @param comicFile the list of comic files from which the cover image will be generated
+     * @param comicFile the comic file from which the cover image will be generated
      */
     private void saveCoverImage(File targetDir, File comicFile) {
         try {
-            // Generate the cover image from the first comic file
-            Image coverImage = generateCoverImage(comicFile);
-
-            // Get the width and height of the cover image
-            int width = (int) coverImage.getWidth();
-            int height = (int) coverImage.getHeight();
-
-            // Create a BufferedImage to hold the cover image data
-            BufferedImage bufferedImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
-
-            // Get the PixelReader to read the pixels from the cover image
-            PixelReader pixelReader = coverImage.getPixelReader();
-
-            // Define the pixel format for reading the pixels
-            WritablePixelFormat<IntBuffer> format = WritablePixelFormat.getIntArgbInstance();
-
-            // Create a buffer to hold the pixel data
-            int[] buffer = new int[width * height];
-
-            // Read the pixels from the cover image into the buffer
-            pixelReader.getPixels(0, 0, width, height, format, buffer, 0, width);
-
-            // Set the pixel data in the BufferedImage
-            bufferedImage.setRGB(0, 0, width, height, buffer, 0, width);
-
-            // Create a file to save the cover image
-            File coverFile = new File(targetDir, "cover.jpg");
-
-            // Write the BufferedImage to the file in JPEG format
-            ImageIO.write(bufferedImage, "jpg", coverFile);
+            // Write the cover and its HiDPI variant from the first page of the comic file
+            new CoverExtractor(true).extract(comicFile, targetDir);
         } catch (Exception e) {
             // Print the stack trace if an exception occurs
             e.printStackTrace();
         }
     }
 
-    /**
-     * Generates the cover image for the given comic file.
-     *
-     * @param file the comic file from which the cover image will be generated
-     * @return the cover image as an Image object
-     * @throws Exception if an error occurs during image generation
-     */
-    private Image generateCoverImage(File file) throws Exception {
-        // Create a new Parser instance
-        Parser parser = new Parser();
-
-        // Set the compressed comic file in the parser
-        parser.setCompressedComic(file);
-
-        // Create a new Chapter instance for the cover
-        Chapter coverChapter = new Chapter(file.getName(), file, false, 0, null);
-
-        // Set the chapter in the parser
-        parser.setChapter(coverChapter);
-
-        // Parse the chapter to extract the cover image
-        coverChapter = parser.parse();
-
-        // Return the first page of the chapter as the cover image
-        return coverChapter.getPage(0);
-    }
-
     /**
      * Uploads the Serie model to the database.
      *
      * @return true if the upload was successful, false otherwise
      */
     private boolean uploadSerieModel() {
-        // Get the instance of the DatabaseController
-        DatabaseController dbController = DatabaseController.getInstance();
-
         // Check if a Serie with the same name already exists in the library
-        if (serieLibrary.getSerieByName(serieModel.getName()) != null) {
+        if (libraryRepository.getSerieByName(serieModel.getName()) != null) {
             // Show an alert if a Serie with the same name already exists
             String alertMessage = "A Serie with the name:\n'" + serieModel.getName() + "'\nalready exists.\nPlease choose a different name.";
             Alert alert = new Alert(Alert.AlertType.INFORMATION, alertMessage, ButtonType.OK);
@@ -220,11 +291,9 @@ public class ImportService {
             return false;
         }
 
-        // Upload the Serie model to the database and get the generated ID
-        int generatedId = dbController.uploadModel(serieModel);
+        // Upload the Serie model to the library, this sets the generated ID on the Serie model
+        int generatedId = libraryRepository.addSerie(serieModel);
         if (generatedId != -1) {
-            // Set the generated ID to the Serie model
-            serieModel.setId(generatedId);
             System.out.println("Serie model uploaded successfully with ID: " + generatedId);
         } else {
             // Show an alert if the upload failed
@@ -241,33 +310,13 @@ public class ImportService {
 
     /**
      * Uploads the Chapter models to the database.
+     * All new chapters are inserted in one batch, chapters whose title already exists in the series are skipped.
      */
     private void uploadChapterModel() {
-        // Get the instance of the DatabaseController
-        DatabaseController dbController = DatabaseController.getInstance();
+        // Insert the new chapters of the Serie model in a single transaction
+        int[] generatedIds = libraryRepository.addChapters(serieModel.getId(), serieModel.getChapters());
 
-        // Iterate through each chapter in the Serie model
-        for (Chapter chapter : serieModel.getChapters()) {
-            // Skip the chapter if it already exists in the library
-            if (chapterLibrary.getChapterByName(chapter.getTitle()) != null) {
-                continue;
-            }
-
-            // Set the Serie ID for the chapter
-            chapter.setSerieID(serieModel.getId());
-
-            // Upload the chapter model to the database and get the generated ID
-            int generatedId = dbController.uploadModel(chapter);
-
-            if (generatedId != -1) {
-                // Set the generated ID to the chapter model
-                chapter.setId(generatedId);
-                System.out.println("Chapter model uploaded successfully with ID: " + generatedId);
-            } else {
-                // Log an error message if the upload failed
-                System.err.println("Failed to upload Chapter model.");
-            }
-        }
+        System.out.println("Uploaded " + generatedIds.length + " Chapter models.");
     }
 
     /**
@@ -0,0 +1,393 @@
+package com.nhlstenden.reader2.services;
+
+import com.nhlstenden.reader2.ComicParser.PageList;
+import com.nhlstenden.reader2.ComicParser.Parser;
+import com.nhlstenden.reader2.models.Chapter;
+import javafx.scene.image.Image;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Service that keeps the pages around the reader position decoded ahead of time.
+ *
+ * The service keeps a sliding window of pages ahead of and behind the current page.
+ * The window spans chapter boundaries, so the first pages of the next chapter are already
+ * decoded (into the PageCache) when the reader reaches the end of a chapter.
+ * Chapters outside of the window are closed again.
+ *
+ * The pages of the window are read in order on the prefetch thread and decoded in parallel by the DecodeExecutor.
+ * Opened chapters are published in a concurrent map, so the reader can look up pages on the JavaFX Application
+ * Thread without waiting for a chapter that is being opened. Only threads opening the same chapter wait for each other.
+ *
+ * The window can be configured with the "reader.prefetch.ahead", "reader.prefetch.behind"
+ * and "reader.prefetch.directionBias" system properties. With direction bias enabled the
+ * ahead and behind sizes are swapped while the reader is paging backwards.
+ */
+public class PrefetchService {
+
+    private final List<Chapter> chapters;
+    private final int pagesAhead;
+    private final int pagesBehind;
+    private final boolean directionBias;
+
+    // Loads the pages the reader is waiting for
+    private final ExecutorService loadExecutor = Executors.newSingleThreadExecutor(daemonThreads("page-loader"));
+
+    // Walks the prefetch window in the background
+    private final ExecutorService prefetchExecutor = Executors.newSingleThreadExecutor(daemonThreads("page-prefetch"));
+
+    // Incremented on every window update and page load, so older prefetch walks stop early
+    private final AtomicInteger generation = new AtomicInteger();
+
+    // Held while a walk decides to close a chapter, so a load can not start in between the check and the close
+    private final Object releaseLock = new Object();
+
+    // The pages of the opened chapters by chapter index, and the chapters that are being opened
+    private final Map<Integer, List<Image>> openedChapters = new ConcurrentHashMap<>();
+    private final Map<Integer, CompletableFuture<List<Image>>> openingChapters = new ConcurrentHashMap<>();
+
+    private volatile boolean shutdown = false;
+
+    // Size the pages are decoded to fit in, 0 decodes pages at their native size
+    private volatile int targetWidth = 0;
+    private volatile int targetHeight = 0;
+
+    /**
+     * Creates a PrefetchService for the given chapters with the window configured through system properties.
+     *
+     * @param chapters the chapters of the serie that is being read.
+     */
+    public PrefetchService(List<Chapter> chapters) {
+        this(chapters,
+                Integer.getInteger("reader.prefetch.ahead", 4),
+                Integer.getInteger("reader.prefetch.behind", 2),
+                Boolean.parseBoolean(System.getProperty("reader.prefetch.directionBias", "true")));
+    }
+
+    /**
+     * Creates a PrefetchService for the given chapters.
+     *
+     * @param chapters the chapters of the serie that is being read.
+     * @param pagesAhead the number of pages to keep decoded in reading direction.
+     * @param pagesBehind the number of pages to keep decoded against reading direction.
+     * @param directionBias true to swap the ahead and behind window while paging backwards.
+     */
+    public PrefetchService(List<Chapter> chapters, int pagesAhead, int pagesBehind, boolean directionBias) {
+        this.chapters = chapters;
+        this.pagesAhead = Math.max(0, pagesAhead);
+        this.pagesBehind = Math.max(0, pagesBehind);
+        this.directionBias = directionBias;
+
+        // Chapters that are still open from before are used as they are
+        for (int i = 0; i < chapters.size(); i++) {
+            if (chapters.get(i).getPages() != null) {
+                openedChapters.put(i, chapters.get(i).getPages());
+            }
+        }
+    }
+
+    /**
+     * Returns the pages of a chapter if the chapter is already opened.
+     *
+     * @param chapterIndex the index of the chapter in the serie.
+     * @return the pages of the chapter, or null if the chapter is not opened.
+     */
+    public List<Image> getPages(int chapterIndex) {
+        return openedChapters.get(chapterIndex);
+    }
+
+    /**
+     * Checks if a page can be shown without waiting for it to be decoded.
+     *
+     * @param chapterIndex the index of the chapter in the serie.
+     * @param pageIndex the index of the page in the chapter.
+     * @return true if the page is available right away, false otherwise.
+     */
+    public boolean isReady(int chapterIndex, int pageIndex) {
+        return isReady(getPages(chapterIndex), pageIndex);
+    }
+
+    /**
+     * Checks if a page of pages returned by getPages can be shown without waiting for it to be decoded.
+     *
+     * @param pages the pages of the chapter, or null if the chapter is not opened.
+     * @param pageIndex the index of the page in the chapter.
+     * @return true if the page is available right away, false otherwise.
+     */
+    public boolean isReady(List<Image> pages, int pageIndex) {
+        if (pages == null) {
+            return false;
+        }
+        return !(pages instanceof PageList) || ((PageList) pages).isCached(pageIndex);
+    }
+
+    /**
+     * Loads a single page in the background, ahead of any prefetching.
+     * A negative page index loads the last page of the chapter.
+     *
+     * The reader is leaving the current window, so the running prefetch walk is abandoned first. Otherwise it could
+     * close the chapter of the page as soon as it is opened, because the chapter is not part of the old window.
+     *
+     * @param chapterIndex the index of the chapter in the serie.
+     * @param pageIndex the index of the page in the chapter, or a negative value for the last page.
+     * @return a future completing with the decoded page.
+     */
+    public CompletableFuture<Image> loadPageAsync(int chapterIndex, int pageIndex) {
+        synchronized (releaseLock) {
+            generation.incrementAndGet();
+        }
+        return CompletableFuture.supplyAsync(() -> {
+            List<Image> pages = openChapter(chapterIndex);
+            return pages.get(pageIndex < 0 ? pages.size() - 1 : pageIndex);
+        }, loadExecutor);
+    }
+
+    /**
+     * Moves the prefetch window to the given reader position.
+     * Any prefetching for a previous position is abandoned.
+     *
+     * @param chapterIndex the index of the current chapter in the serie.
+     * @param pageIndex the index of the current page in the chapter.
+     * @param forward true if the reader moved forwards, false if it moved backwards.
+     */
+    public void update(int chapterIndex, int pageIndex, boolean forward) {
+        if (shutdown) {
+            return;
+        }
+        int windowGeneration = generation.incrementAndGet();
+
+        // Swap the window while paging backwards when direction bias is enabled
+        int after = (directionBias && !forward) ? pagesBehind : pagesAhead;
+        int before = (directionBias && !forward) ? pagesAhead : pagesBehind;
+
+        prefetchExecutor.execute(() -> prefetchWindow(windowGeneration, chapterIndex, pageIndex, after, before, forward));
+    }
+
+    /**
+     * Sets the size pages are decoded to fit in, for the opened chapters and the chapters opened later.
+     * Pages already decoded at a smaller size are decoded again when they are requested.
+     *
+     * @param width the target width in pixels, or 0 for the native size.
+     * @param height the target height in pixels, or 0 for the native size.
+     */
+    public void setTargetSize(int width, int height) {
+        targetWidth = width;
+        targetHeight = height;
+        for (List<Image> pages : openedChapters.values()) {
+            if (pages instanceof PageList pageList) {
+                pageList.setTargetSize(width, height);
+            }
+        }
+    }
+
+    /**
+     * Stops prefetching and closes the pages of every chapter.
+     */
+    public void shutdown() {
+        shutdown = true;
+        generation.incrementAndGet();
+        loadExecutor.shutdownNow();
+        prefetchExecutor.shutdownNow();
+
+        for (Integer chapterIndex : openedChapters.keySet()) {
+            closeChapter(chapterIndex);
+        }
+    }
+
+    /**
+     * Walks the window around the reader position, decoding every page that is not cached yet.
+     * Chapters that are not part of the window are closed first, then pages in reading direction are decoded before the others.
+     */
+    private void prefetchWindow(int windowGeneration, int chapterIndex, int pageIndex, int after, int before, boolean forward) {
+        try {
+            Set<Integer> windowChapters = new HashSet<>();
+            windowChapters.add(chapterIndex);
+
+            List<int[]> ahead = walk(chapterIndex, pageIndex, after, true, windowChapters);
+            List<int[]> behind = walk(chapterIndex, pageIndex, before, false, windowChapters);
+
+            // Release the chapters that fell out of the window before decoding new pages
+            releaseChaptersOutside(windowGeneration, windowChapters);
+
+            List<int[]> order = new ArrayList<>(forward ? ahead : behind);
+            order.addAll(forward ? behind : ahead);
+
+            // Read the pages in order, the DecodeExecutor decodes them in parallel
+            List<CompletableFuture<Image>> decodes = new ArrayList<>();
+            for (int[] position : order) {
+                if (generation.get() != windowGeneration) {
+                    break;
+                }
+                List<Image> pages = openChapter(position[0]);
+                if (pages instanceof PageList && !((PageList) pages).isCached(position[1])) {
+                    // Decoding through the page list stores the page in the PageCache
+                    decodes.add(((PageList) pages).decodeAsync(position[1]));
+                }
+            }
+
+            // Wait for the decodes, so the next window does not pile up behind this one
+            for (CompletableFuture<Image> decode : decodes) {
+                try {
+                    decode.join();
+                } catch (RuntimeException e) {
+                    if (!shutdown && generation.get() == windowGeneration) {
+                        e.printStackTrace();
+                    }
+                }
+            }
+        } catch (RuntimeException e) {
+            if (!shutdown) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Collects the positions of the next pages in the given direction, crossing into neighbouring chapters.
+     */
+    private List<int[]> walk(int chapterIndex, int pageIndex, int count, boolean forward, Set<Integer> windowChapters) {
+        List<int[]> positions = new ArrayList<>();
+        int chapter = chapterIndex;
+        int page = pageIndex;
+
+        while (positions.size() < count) {
+            List<Image> pages = openChapter(chapter);
+            if (forward && page + 1 < pages.size()) {
+                page++;
+            } else if (!forward && page > 0) {
+                page--;
+            } else if (forward && chapter + 1 < chapters.size()) {
+                chapter++;
+                page = 0;
+            } else if (!forward && chapter > 0) {
+                chapter--;
+                page = openChapter(chapter).size() - 1;
+            } else {
+                break;
+            }
+            windowChapters.add(chapter);
+            positions.add(new int[]{chapter, page});
+        }
+        return positions;
+    }
+
+    /**
+     * Returns the pages of a chapter, opening the chapter first if needed.
+     * A chapter is opened by one thread at a time, other threads asking for it wait for the same open.
+     */
+    private List<Image> openChapter(int chapterIndex) {
+        List<Image> pages = openedChapters.get(chapterIndex);
+        if (pages != null) {
+            return pages;
+        }
+
+        CompletableFuture<List<Image>> open = new CompletableFuture<>();
+        CompletableFuture<List<Image>> running = openingChapters.putIfAbsent(chapterIndex, open);
+        if (running != null) {
+            try {
+                return running.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException cause ? cause : e;
+            }
+        }
+
+        try {
+            // Another thread may have finished opening the chapter in the meantime
+            pages = openedChapters.get(chapterIndex);
+            if (pages == null) {
+                pages = parseChapter(chapters.get(chapterIndex));
+                openedChapters.put(chapterIndex, pages);
+
+                // A chapter that finished opening after the shutdown is not closed by it
+                if (shutdown) {
+                    closeChapter(chapterIndex);
+                    throw new IllegalStateException("Prefetching has been shut down");
+                }
+            }
+            open.complete(pages);
+            return pages;
+        } catch (RuntimeException e) {
+            open.completeExceptionally(e);
+            throw e;
+        } finally {
+            openingChapters.remove(chapterIndex, open);
+        }
+    }
+
+    /**
+     * Parses the archive of a chapter into its pages, this reads the archive and may take a while.
+     */
+    private List<Image> parseChapter(Chapter chapter) {
+        if (shutdown) {
+            throw new IllegalStateException("Prefetching has been shut down");
+        }
+        try {
+            Parser parser = new Parser();
+            parser.setChapter(chapter);
+            parser.setCompressedComic(chapter.getFile());
+            parser.parse();
+            if (chapter.getPages() instanceof PageList pageList) {
+                pageList.setTargetSize(targetWidth, targetHeight);
+            }
+        } catch (Exception e) {
+            throw new IllegalStateException("Failed to open chapter " + chapter.getTitle(), e);
+        }
+        if (chapter.getPages() == null) {
+            throw new IllegalStateException("Failed to open chapter " + chapter.getTitle());
+        }
+        return chapter.getPages();
+    }
+
+    /**
+     * Closes the pages of every chapter that is not part of the prefetch window.
+     * Nothing is closed when the window is already outdated, the newer window or the page load decides what to keep.
+     * Runs on the prefetch thread only.
+     */
+    private void releaseChaptersOutside(int windowGeneration, Set<Integer> windowChapters) {
+        for (Integer chapterIndex : openedChapters.keySet()) {
+            synchronized (releaseLock) {
+                if (generation.get() != windowGeneration) {
+                    return;
+                }
+                if (!windowChapters.contains(chapterIndex)) {
+                    closeChapter(chapterIndex);
+                }
+            }
+        }
+    }
+
+    /**
+     * Unpublishes a chapter before closing its pages, so the reader does not pick up pages that are being closed.
+     */
+    private void closeChapter(int chapterIndex) {
+        List<Image> pages = openedChapters.remove(chapterIndex);
+        if (pages != null) {
+            Chapter chapter = chapters.get(chapterIndex);
+            if (chapter.getPages() == pages) {
+                chapter.closePages();
+            }
+        }
+    }
+
+    /**
+     * Creates a thread factory for named daemon threads, so prefetching never keeps the application alive.
+     */
+    private static ThreadFactory daemonThreads(String name) {
+        return runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
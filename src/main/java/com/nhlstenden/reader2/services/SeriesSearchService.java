@@ -0,0 +1,216 @@
+package com.nhlstenden.reader2.services;
+
+import com.nhlstenden.reader2.DataLibrary.LibraryRepository;
+import com.nhlstenden.reader2.DataLibrary.SearchLibrary;
+import com.nhlstenden.reader2.models.Serie;
+import javafx.application.Platform;
+import javafx.collections.ObservableList;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Service that searches the series of the series browser in the background.
+ *
+ * A query is run DEBOUNCE_MS after the last keystroke, on a background thread, so typing never waits on a search.
+ * Like the CoverService only the latest request is delivered: a new query cancels the one that is waiting or
+ * running, and results of a cancelled query are dropped. Callbacks are always called on the JavaFX Application Thread.
+ */
+public class SeriesSearchService {
+
+    // Time to wait for the next keystroke before a query is run
+    private static final long DEBOUNCE_MS = 150;
+
+    private final LibraryRepository libraryRepository = LibraryRepository.getInstance();
+    private final SearchLibrary searchLibrary = new SearchLibrary();
+    private final int maxResults;
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "series-search");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private Future<?> pendingRequest;
+    private long requestId = 0;
+
+    /**
+     * Creates a new SeriesSearchService.
+     *
+     * @param maxResults the maximum number of series returned for a query that is not empty.
+     */
+    public SeriesSearchService(int maxResults) {
+        this.maxResults = maxResults;
+    }
+
+    /**
+     * Searches the series for a query and passes the names of the matching series to the callback.
+     *
+     * The query is run after a short delay, unless another query is entered in the meantime.
+     * Must be called on the JavaFX Application Thread.
+     *
+     * @param query the text entered by the user.
+     * @param onResults the callback receiving the names of the series, best match first.
+     */
+    public void search(String query, Consumer<List<String>> onResults) {
+        // Any older request is stale now
+        cancel();
+        long id = requestId;
+
+        pendingRequest = executor.schedule(() -> {
+            List<String> names = findSeries(query);
+            if (names == null) {
+                return;
+            }
+
+            Platform.runLater(() -> {
+                // Only deliver the results if they are still the latest request
+                if (id == requestId) {
+                    onResults.accept(names);
+                }
+            });
+        }, DEBOUNCE_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Cancels the pending search, if any. Must be called on the JavaFX Application Thread.
+     */
+    public void cancel() {
+        requestId++;
+        if (pendingRequest != null) {
+            pendingRequest.cancel(true);
+            pendingRequest = null;
+        }
+    }
+
+    /**
+     * Finds the series for a query.
+     * The series whose name looks like the query come first, typos are allowed. They are followed by the series
+     * whose name, description, tags, authors or notes contain the words of the query, best match first.
+     * An empty query returns all series.
+     *
+     * @return the names of the series, or null if the search was cancelled.
+     */
+    private List<String> findSeries(String query) {
+        List<String> names = new ArrayList<>();
+        if (query == null || query.isBlank()) {
+            for (Serie serie : libraryRepository.getAllSeries()) {
+                names.add(serie.getName());
+            }
+            return names;
+        }
+
+        Set<String> hits = new LinkedHashSet<>();
+        for (Serie serie : libraryRepository.searchSeriesByName(query, maxResults)) {
+            hits.add(serie.getName());
+        }
+
+        // Skip the full-text search when a newer query has been entered
+        if (Thread.currentThread().isInterrupted()) {
+            return null;
+        }
+        for (SearchLibrary.Hit hit : searchLibrary.search(query, 0, maxResults)) {
+            if (hits.size() >= maxResults) {
+                break;
+            }
+            hits.add(hit.name());
+        }
+        names.addAll(hits);
+        return names;
+    }
+
+    /**
+     * Updates a list to the given items with as few changes as possible, so the list view only redraws the rows
+     * that changed and keeps its selection and scroll position.
+     *
+     * The items both lists start and end with are kept. When the remaining items of one list all appear in the other
+     * list in the same order, which is the usual case while typing, only the extra items are removed or inserted.
+     * Otherwise the remaining items are replaced. The items must be unique, like the names of the series.
+     *
+     * @param items the list to update, for example the items of a list view.
+     * @param target the items the list must have afterwards.
+     * @param <T> the type of the items.
+     */
+    public static <T> void applyDiff(ObservableList<T> items, List<T> target) {
+        int oldSize = items.size();
+        int newSize = target.size();
+
+        int prefix = 0;
+        int common = Math.min(oldSize, newSize);
+        while (prefix < common && items.get(prefix).equals(target.get(prefix))) {
+            prefix++;
+        }
+        int suffix = 0;
+        while (suffix < common - prefix && items.get(oldSize - 1 - suffix).equals(target.get(newSize - 1 - suffix))) {
+            suffix++;
+        }
+
+        List<T> oldMiddle = new ArrayList<>(items.subList(prefix, oldSize - suffix));
+        List<T> newMiddle = target.subList(prefix, newSize - suffix);
+        if (oldMiddle.isEmpty() && newMiddle.isEmpty()) {
+            return;
+        }
+
+        if (isSubsequence(newMiddle, oldMiddle)) {
+            // Narrowing: remove every run of items that are not in the target with one ranged remove. Removing
+            // one item at a time, also through removeAll or removeIf, shifts the rest of the list for every item.
+            // The runs are removed from the end, so the runs before them keep their position
+            Set<T> kept = new HashSet<>(newMiddle);
+            int runEnd = oldMiddle.size();
+            for (int i = oldMiddle.size() - 1; i >= -1; i--) {
+                if (i < 0 || kept.contains(oldMiddle.get(i))) {
+                    if (i + 1 < runEnd) {
+                        items.remove(prefix + i + 1, prefix + runEnd);
+                    }
+                    runEnd = i;
+                }
+            }
+        } else if (isSubsequence(oldMiddle, newMiddle)) {
+            // Widening: insert every run of new items in front of the item that follows it
+            int position = prefix;
+            int oldIndex = 0;
+            int runStart = 0;
+            for (int i = 0; i <= newMiddle.size(); i++) {
+                boolean isOld = i < newMiddle.size() && oldIndex < oldMiddle.size() && newMiddle.get(i).equals(oldMiddle.get(oldIndex));
+                if (isOld || i == newMiddle.size()) {
+                    if (runStart < i) {
+                        items.addAll(position, newMiddle.subList(runStart, i));
+                        position += i - runStart;
+                    }
+                    if (isOld) {
+                        oldIndex++;
+                        position++;
+                    }
+                    runStart = i + 1;
+                }
+            }
+        } else {
+            items.remove(prefix, oldSize - suffix);
+            items.addAll(prefix, newMiddle);
+        }
+    }
+
+    /**
+     * Checks if all items of the first list appear in the second list, in the same order.
+     */
+    private static <T> boolean isSubsequence(List<T> subsequence, List<T> list) {
+        if (subsequence.size() > list.size()) {
+            return false;
+        }
+        int index = 0;
+        for (T item : list) {
+            if (index < subsequence.size() && subsequence.get(index).equals(item)) {
+                index++;
+            }
+        }
+        return index == subsequence.size();
+    }
+}
@@ -0,0 +1,58 @@
+package com.nhlstenden.reader2.ComicParser;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ComicFormatsTest {
+
+    private static final byte[] ZIP_HEADER = {'P', 'K', 0x03, 0x04, 0x14, 0x00, 0x00, 0x00};
+    private static final byte[] RAR4_HEADER = {'R', 'a', 'r', '!', 0x1A, 0x07, 0x00, (byte) 0xCF, (byte) 0x90, 0x73};
+    private static final byte[] RAR5_HEADER = {'R', 'a', 'r', '!', 0x1A, 0x07, 0x01, 0x00, 0x33, (byte) 0x92};
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void detect_readsAZipMisnamedAsCbrAsZip() throws IOException {
+        ComicFormat format = ComicFormats.detect(write("comic.cbr", ZIP_HEADER));
+
+        assertInstanceOf(ZipComicFormat.class, format);
+        assertTrue(format.isZipContainer());
+        assertTrue(format.supportsRandomAccess());
+    }
+
+    @Test
+    void detect_readsARarMisnamedAsCbzAsRar() throws IOException {
+        ComicFormat format = ComicFormats.detect(write("comic.cbz", RAR4_HEADER));
+
+        assertInstanceOf(RarComicFormat.class, format);
+        assertFalse(format.isZipContainer());
+        assertFalse(format.supportsRandomAccess());
+    }
+
+    @Test
+    void detect_readsANhlcomicAsGifComic() throws IOException {
+        ComicFormat format = ComicFormats.detect(write("comic.NHLCOMIC", ZIP_HEADER));
+
+        assertInstanceOf(GifComicFormat.class, format);
+        assertFalse(format.isZipContainer());
+    }
+
+    @Test
+    void detect_returnsNullForUnreadableFiles() throws IOException {
+        assertNull(ComicFormats.detect(write("rar5.cbr", RAR5_HEADER)));
+        assertNull(ComicFormats.detect(write("text.cbz", "not a comic".getBytes())));
+        assertNull(ComicFormats.detect(write("empty.cbz", new byte[0])));
+    }
+
+    private File write(String name, byte[] content) throws IOException {
+        return Files.write(tempDir.resolve(name), content).toFile();
+    }
+}
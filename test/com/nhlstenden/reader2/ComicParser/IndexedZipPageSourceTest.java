@@ -0,0 +1,89 @@
+package com.nhlstenden.reader2.ComicParser;
+
+import com.nhlstenden.reader2.models.Page;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IndexedZipPageSourceTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void openPage_readsStoredAndDeflatedPages() throws IOException {
+        File archive = PageIndexerTest.writeZip(tempDir.resolve("comic.cbz"), "comment");
+
+        try (IndexedZipPageSource source = new IndexedZipPageSource(archive, pageTable(archive));
+             ZipFile zip = new ZipFile(archive)) {
+            assertTrue(source.isValid());
+            for (int i = 0; i < source.size(); i++) {
+                try (InputStream expected = zip.getInputStream(zip.getEntry(source.getName(i)));
+                     InputStream actual = source.openPage(i)) {
+                    assertArrayEquals(expected.readAllBytes(), actual.readAllBytes());
+                }
+            }
+        }
+    }
+
+    @Test
+    void isValid_rejectsATableOfAnArchiveWithOtherNames() throws IOException {
+        File archive = PageIndexerTest.writeZip(tempDir.resolve("comic.cbz"), null);
+        List<Page> pages = pageTable(archive);
+
+        // Same layout, only the names differ
+        byte[] content = Files.readAllBytes(archive.toPath());
+        String renamed = new String(content, StandardCharsets.ISO_8859_1).replace("p1.png", "p9.png");
+        Files.write(archive.toPath(), renamed.getBytes(StandardCharsets.ISO_8859_1));
+
+        try (IndexedZipPageSource source = new IndexedZipPageSource(archive, pages)) {
+            assertFalse(source.isValid());
+            assertThrows(IOException.class, () -> source.openPage(0));
+        }
+    }
+
+    @Test
+    void isValid_rejectsATableOfAnArchiveWithOtherSizes() throws IOException {
+        File archive = PageIndexerTest.writeZip(tempDir.resolve("comic.cbz"), null);
+        List<Page> pages = pageTable(archive);
+
+        // Same names at the same offsets, but pages of another size
+        try (ZipOutputStream outputStream = new ZipOutputStream(Files.newOutputStream(archive.toPath()))) {
+            outputStream.putNextEntry(new ZipEntry("p1.png"));
+            outputStream.write("other page data".getBytes(StandardCharsets.UTF_8));
+            outputStream.closeEntry();
+            outputStream.putNextEntry(new ZipEntry("p2.png"));
+            outputStream.write("other page data".getBytes(StandardCharsets.UTF_8));
+            outputStream.closeEntry();
+        }
+
+        try (IndexedZipPageSource source = new IndexedZipPageSource(archive, pages)) {
+            assertFalse(source.isValid());
+        }
+    }
+
+    private static List<Page> pageTable(File archive) throws IOException {
+        Map<String, PageIndexer.CentralEntry> entries = PageIndexer.readCentralDirectory(archive);
+        List<Page> pages = new ArrayList<>();
+        for (String name : List.of("p1.png", "p2.png")) {
+            PageIndexer.CentralEntry entry = entries.get(name);
+            pages.add(new Page(1, name, pages.size(), entry.compressedSize(), entry.uncompressedSize(),
+                    entry.headerOffset(), 0, 0));
+        }
+        return pages;
+    }
+}
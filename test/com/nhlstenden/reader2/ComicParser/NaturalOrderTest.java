@@ -0,0 +1,44 @@
+package com.nhlstenden.reader2.ComicParser;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NaturalOrderTest {
+
+    @Test
+    void sort_ordersDigitRunsByValue() {
+        List<String> names = new ArrayList<>(List.of("page10.jpg", "page2.jpg", "page1.jpg", "cover.jpg"));
+        NaturalOrder.sort(names, Function.identity());
+
+        assertEquals(List.of("cover.jpg", "page1.jpg", "page2.jpg", "page10.jpg"), names);
+    }
+
+    @Test
+    void sort_ordersByDirectoryFirst() {
+        List<String> names = new ArrayList<>(List.of("ch2/p1.png", "ch10/p1.png", "ch1/p2.png", "ch1/p10.png"));
+        NaturalOrder.sort(names, Function.identity());
+
+        assertEquals(List.of("ch1/p2.png", "ch1/p10.png", "ch2/p1.png", "ch10/p1.png"), names);
+    }
+
+    @Test
+    void compare_handlesNumbersLongerThanLong() {
+        String small = "scan_99999999999999999999999.jpg";
+        String large = "scan_100000000000000000000000.jpg";
+
+        assertTrue(NaturalOrder.compare(small, large) < 0);
+        assertTrue(NaturalOrder.compare(large, small) > 0);
+    }
+
+    @Test
+    void compare_leadingZerosKeepATotalOrder() {
+        assertTrue(NaturalOrder.compare("001.jpg", "2.jpg") < 0);
+        assertNotEquals(0, NaturalOrder.compare("01.jpg", "1.jpg"));
+        assertEquals(0, NaturalOrder.compare("01.jpg", "01.jpg"));
+    }
+}
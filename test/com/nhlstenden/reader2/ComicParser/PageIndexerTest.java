@@ -0,0 +1,89 @@
+package com.nhlstenden.reader2.ComicParser;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PageIndexerTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void readCentralDirectory_readsStoredAndDeflatedEntries() throws IOException {
+        File archive = writeZip(tempDir.resolve("comic.cbz"), null);
+        Map<String, PageIndexer.CentralEntry> entries = PageIndexer.readCentralDirectory(archive);
+
+        assertNotNull(entries);
+        assertEquals(2, entries.size());
+        try (ZipFile zip = new ZipFile(archive)) {
+            for (String name : new String[]{"p1.png", "p2.png"}) {
+                ZipEntry zipEntry = zip.getEntry(name);
+                PageIndexer.CentralEntry entry = entries.get(name);
+                assertEquals(zipEntry.getCompressedSize(), entry.compressedSize());
+                assertEquals(zipEntry.getSize(), entry.uncompressedSize());
+            }
+        }
+        assertEquals(0, entries.get("p1.png").headerOffset());
+        assertTrue(entries.get("p2.png").headerOffset() > 0);
+    }
+
+    @Test
+    void readCentralDirectory_skipsTheArchiveComment() throws IOException {
+        File archive = writeZip(tempDir.resolve("comic.cbz"), "Scanned by someone, PK\u0005\u0006 in the comment");
+        Map<String, PageIndexer.CentralEntry> entries = PageIndexer.readCentralDirectory(archive);
+
+        assertNotNull(entries);
+        assertEquals(2, entries.size());
+        assertEquals(0, entries.get("p1.png").headerOffset());
+    }
+
+    @Test
+    void readCentralDirectory_returnsNullWithoutCentralDirectory() throws IOException {
+        Path file = tempDir.resolve("comic.cbz");
+        Files.write(file, "not a zip archive".getBytes(StandardCharsets.UTF_8));
+
+        assertNull(PageIndexer.readCentralDirectory(file.toFile()));
+    }
+
+    /**
+     * Writes a ZIP archive with a stored page p1.png and a deflated page p2.png.
+     */
+    static File writeZip(Path file, String comment) throws IOException {
+        byte[] stored = "stored page data".getBytes(StandardCharsets.UTF_8);
+        byte[] deflated = "deflated page data ".repeat(50).getBytes(StandardCharsets.UTF_8);
+        try (ZipOutputStream outputStream = new ZipOutputStream(Files.newOutputStream(file))) {
+            CRC32 crc = new CRC32();
+            crc.update(stored);
+            ZipEntry storedEntry = new ZipEntry("p1.png");
+            storedEntry.setMethod(ZipEntry.STORED);
+            storedEntry.setSize(stored.length);
+            storedEntry.setCompressedSize(stored.length);
+            storedEntry.setCrc(crc.getValue());
+            outputStream.putNextEntry(storedEntry);
+            outputStream.write(stored);
+            outputStream.closeEntry();
+
+            outputStream.putNextEntry(new ZipEntry("p2.png"));
+            outputStream.write(deflated);
+            outputStream.closeEntry();
+
+            if (comment != null) {
+                outputStream.setComment(comment);
+            }
+        }
+        return file.toFile();
+    }
+}
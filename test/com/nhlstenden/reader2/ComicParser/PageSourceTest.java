@@ -0,0 +1,68 @@
+package com.nhlstenden.reader2.ComicParser;
+
+import javafx.scene.image.Image;
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PageSourceTest {
+
+    // Decodes with the default methods only, the pages themselves are never read
+    private final PageSource source = new PageSource() {
+        @Override
+        public int size() {
+            return 0;
+        }
+
+        @Override
+        public String getName(int index) {
+            return null;
+        }
+
+        @Override
+        public InputStream openPage(int index) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void close() {
+        }
+    };
+
+    @Test
+    void decode_keepsSmallPagesAtTheirNativeSize() throws IOException {
+        Image page = source.decode(png(300, 400), 1200, 1600);
+
+        assertEquals(300, page.getWidth());
+        assertEquals(400, page.getHeight());
+    }
+
+    @Test
+    void decode_scalesLargePagesDownToFitTheTarget() throws IOException {
+        Image page = source.decode(png(1600, 1200), 800, 800);
+
+        assertEquals(800, page.getWidth());
+        assertEquals(600, page.getHeight());
+    }
+
+    @Test
+    void decode_keepsTheNativeSizeWithoutTarget() throws IOException {
+        Image page = source.decode(png(1600, 1200), 0, 0);
+
+        assertEquals(1600, page.getWidth());
+        assertEquals(1200, page.getHeight());
+    }
+
+    private static InputStream png(int width, int height) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB), "png", outputStream);
+        return new ByteArrayInputStream(outputStream.toByteArray());
+    }
+}
@@ -0,0 +1,61 @@
+package com.nhlstenden.reader2.DataLibrary;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TrigramIndexTest {
+
+    private TrigramIndex indexOf(String... names) {
+        TrigramIndex index = new TrigramIndex();
+        for (int i = 0; i < names.length; i++) {
+            index.add(i + 1, names[i]);
+        }
+        return index;
+    }
+
+    @Test
+    void search_findsNamesWithATypo() {
+        TrigramIndex index = indexOf("One Piece", "Naruto", "Bleach");
+
+        assertArrayEquals(new int[]{2}, index.search("narutp", 10));
+        assertArrayEquals(new int[]{1}, index.search("one pice", 10));
+    }
+
+    @Test
+    void search_ranksPrefixBeforeContainedBeforeSimilar() {
+        TrigramIndex index = indexOf("The Batman", "Batmen", "Batman Beyond");
+
+        assertArrayEquals(new int[]{3, 1, 2}, index.search("batman", 10));
+    }
+
+    @Test
+    void search_matchesASingleLetterAndIgnoresAccents() {
+        TrigramIndex index = indexOf("Émile", "Asterix", "Eden");
+
+        assertArrayEquals(new int[]{3, 1}, index.search("e", 10));
+        assertArrayEquals(new int[]{1}, index.search("emile", 10));
+    }
+
+    @Test
+    void removeAndReplace_updateTheIndex() {
+        TrigramIndex index = indexOf("Naruto", "Bleach");
+        index.remove(1);
+        index.add(2, "Berserk");
+        index.add(3, "Nana");
+
+        assertEquals(2, index.size());
+        assertArrayEquals(new int[0], index.search("naruto", 10));
+        assertArrayEquals(new int[0], index.search("bleach", 10));
+        assertArrayEquals(new int[]{2}, index.search("berserk", 10));
+        assertArrayEquals(new int[]{3}, index.search("nana", 10));
+    }
+
+    @Test
+    void search_respectsTheLimit() {
+        TrigramIndex index = indexOf("Saga 1", "Saga 2", "Saga 3");
+
+        assertEquals(2, index.search("saga", 2).length);
+        assertEquals(0, index.search("   ", 10).length);
+    }
+}
@@ -0,0 +1,80 @@
+package com.nhlstenden.reader2.services;
+
+import javafx.collections.FXCollections;
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableList;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SeriesSearchServiceTest {
+
+    private final List<String> removed = new ArrayList<>();
+    private final List<String> added = new ArrayList<>();
+
+    private ObservableList<String> listOf(String... items) {
+        ObservableList<String> list = FXCollections.observableArrayList(items);
+        list.addListener((ListChangeListener<String>) change -> {
+            while (change.next()) {
+                removed.addAll(change.getRemoved());
+                added.addAll(change.getAddedSubList());
+            }
+        });
+        return list;
+    }
+
+    @Test
+    void applyDiff_narrowingOnlyRemovesTheDroppedItems() {
+        ObservableList<String> items = listOf("Bleach", "Berserk", "Naruto", "Nana", "Bakuman");
+        SeriesSearchService.applyDiff(items, List.of("Bleach", "Berserk", "Bakuman"));
+
+        assertEquals(List.of("Bleach", "Berserk", "Bakuman"), items);
+        assertEquals(List.of("Naruto", "Nana"), removed);
+        assertTrue(added.isEmpty());
+    }
+
+    @Test
+    void applyDiff_narrowingALargeListKeepsTheMatches() {
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < 50_000; i++) {
+            names.add("Serie " + i);
+        }
+        ObservableList<String> items = listOf(names.toArray(new String[0]));
+        SeriesSearchService.applyDiff(items, List.of("Serie 1", "Serie 25000", "Serie 49998"));
+
+        assertEquals(List.of("Serie 1", "Serie 25000", "Serie 49998"), items);
+        assertEquals(49_997, removed.size());
+        assertTrue(added.isEmpty());
+    }
+
+    @Test
+    void applyDiff_wideningOnlyInsertsTheNewItems() {
+        ObservableList<String> items = listOf("Bleach", "Bakuman");
+        SeriesSearchService.applyDiff(items, List.of("Akira", "Bleach", "Berserk", "Blame", "Bakuman", "Monster"));
+
+        assertEquals(List.of("Akira", "Bleach", "Berserk", "Blame", "Bakuman", "Monster"), items);
+        assertEquals(List.of("Akira", "Berserk", "Blame", "Monster"), added);
+        assertTrue(removed.isEmpty());
+    }
+
+    @Test
+    void applyDiff_reorderingKeepsTheCommonStartAndEnd() {
+        ObservableList<String> items = listOf("Akira", "Bleach", "Berserk", "Monster");
+        SeriesSearchService.applyDiff(items, List.of("Akira", "Berserk", "Bleach", "Monster"));
+
+        assertEquals(List.of("Akira", "Berserk", "Bleach", "Monster"), items);
+        assertEquals(List.of("Bleach", "Berserk"), removed);
+    }
+
+    @Test
+    void applyDiff_sameItemsChangeNothing() {
+        ObservableList<String> items = listOf("Akira", "Bleach");
+        SeriesSearchService.applyDiff(items, List.of("Akira", "Bleach"));
+
+        assertTrue(removed.isEmpty());
+        assertTrue(added.isEmpty());
+    }
+}